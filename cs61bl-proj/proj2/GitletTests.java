@@ -1,3 +1,6 @@
+import gitlet.LogEntry;
+import gitlet.LruCache;
+import gitlet.Repository;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -24,7 +27,10 @@ import java.security.Permission;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -1460,4 +1466,499 @@ public class GitletTests {
         assertFileEquals(NOTF, "F.txt");
         assertFileEquals(G, "G.txt");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void test45_repack() {
+        i_prelude1();
+        writeFile(WUG, "wug.txt");
+        gitletCommand(new String[]{"add", "wug.txt"}, "");
+        gitletCommand(new String[]{"commit", "version 1 of wug.txt"}, "");
+        gitletCommand(new String[]{"repack"}, "");
+        writeFile(NOTWUG, "wug.txt");
+        gitletCommand(new String[]{"add", "wug.txt"}, "");
+        gitletCommand(new String[]{"commit", "version 2 of wug.txt"}, "");
+        Matcher logMatch = gitletCommandP(new String[]{"log"}, """
+                ===
+                ${COMMIT_HEAD}
+                version 2 of wug.txt
+
+                ===
+                ${COMMIT_HEAD}
+                version 1 of wug.txt
+
+                ===
+                ${COMMIT_HEAD}
+                initial commit
+
+                """.replace("${COMMIT_HEAD}", COMMIT_HEAD));
+        String uid1 = logMatch.group(2);
+        gitletCommand(new String[]{"repack"}, "");
+        gitletCommand(new String[]{"find", "version 1 of wug.txt"}, uid1);
+        gitletCommand(new String[]{"checkout", uid1.substring(0, 8), "--", "wug.txt"}, "");
+        assertFileEquals(WUG, "wug.txt");
+        gitletCommand(new String[]{"checkout", "--", "wug.txt"}, "");
+        assertFileEquals(NOTWUG, "wug.txt");
+    }
+
+    @Test
+    public void test46_logMaxCount() {
+        i_setup2();
+        writeFile(NOTWUG, "wug.txt");
+        gitletCommand(new String[]{"add", "wug.txt"}, "");
+        gitletCommand(new String[]{"commit", "version 2 of wug.txt"}, "");
+        gitletCommandP(new String[]{"log", "-n", "1"}, """
+                ===
+                ${COMMIT_HEAD}
+                version 2 of wug.txt
+
+                """.replace("${COMMIT_HEAD}", COMMIT_HEAD));
+        gitletCommandP(new String[]{"log", "--max-count=2", "--since",
+                "2000-01-01"}, """
+                ===
+                ${COMMIT_HEAD}
+                version 2 of wug.txt
+
+                ===
+                ${COMMIT_HEAD}
+                Two files
+
+                """.replace("${COMMIT_HEAD}", COMMIT_HEAD));
+        gitletCommand(new String[]{"log", "-n"}, "Incorrect operands.");
+    }
+
+    @Test
+    public void test47_findWordAndRegex() {
+        i_setup2();
+        writeFile(NOTWUG, "wug.txt");
+        gitletCommand(new String[]{"add", "wug.txt"}, "");
+        gitletCommand(new String[]{"commit", "Fix TICKET-12: two files"}, "");
+        Matcher m = gitletCommandP(new String[]{"log", "-n", "1"}, """
+                ===
+                ${COMMIT_HEAD}
+                Fix TICKET-12: two files
+
+                """.replace("${COMMIT_HEAD}", COMMIT_HEAD));
+        String uid = m.group(1);
+        gitletCommand(new String[]{"find", "--word", "ticket-12"}, uid);
+        gitletCommand(new String[]{"find", "--regex", "TICKET-\\d+:"}, uid);
+        gitletCommand(new String[]{"find", "--word", "ticket-13"},
+                "Found no commit with that message.");
+        gitletCommandP(new String[]{"find", "--word", "two files"},
+                uid + "\n[a-f0-9]+");
+    }
+
+    @Test
+    public void test48_batch() throws IOException {
+        i_prelude1();
+        writeFile(WUG, "wug.txt");
+        Files.writeString(Path.of("script.txt"), """
+                # one process, many commands
+                add wug.txt
+                commit "version 1 of wug.txt"
+                log -n 1
+                find "version 1 of wug.txt"
+                """);
+        Matcher m = gitletCommandP(new String[]{"batch", "script.txt"}, """
+                ===
+                ${COMMIT_HEAD}
+                version 1 of wug.txt
+
+                ([a-f0-9]+)
+                """.replace("${COMMIT_HEAD}", COMMIT_HEAD));
+        assertEquals(m.group(1), m.group(2));
+    }
+
+    @Test
+    public void test49_subdirectories() throws IOException {
+        i_prelude1();
+        Files.createDirectories(Path.of("src", "util"));
+        writeFile(WUG, "src/util/wug.txt");
+        writeFile(NOTWUG, "src/notwug.txt");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+                src/notwug.txt
+                src/util/wug.txt
+
+                """);
+        gitletCommand(new String[]{"add", "src"}, "");
+        gitletCommand(new String[]{"commit", "Nested files"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        gitletCommand(new String[]{"rm", "src/util/wug.txt"}, "");
+        gitletCommand(new String[]{"commit", "Remove wug"}, "");
+        assertFalse(Files.exists(Path.of("src", "util")));
+        gitletCommand(new String[]{"checkout", "other"}, "");
+        assertEquals(Files.readString(WUG),
+                Files.readString(Path.of("src", "util", "wug.txt")));
+        gitletCommand(new String[]{"checkout", "main"}, "");
+        assertFalse(Files.exists(Path.of("src", "util")));
+        i_blankStatus2();
+    }
+
+    @Test
+    public void test50_gitletignore() throws IOException {
+        i_prelude1();
+        Files.createDirectories(Path.of("build", "classes"));
+        writeFile(WUG, "build/classes/wug.txt");
+        writeFile(NOTWUG, "notwug.log");
+        Files.writeString(Path.of(".gitletignore"), """
+                # build output
+                build/
+                *.log
+                """);
+        gitletCommand(new String[]{"add", "notwug.log"},
+                "File is ignored; remove it from .gitletignore to add it.");
+        gitletCommand(new String[]{"add", "."}, "");
+        gitletCommand(new String[]{"commit", "Ignore rules"}, "");
+        i_blankStatus();
+        gitletCommand(new String[]{"branch", "other"}, "");
+        gitletCommand(new String[]{"checkout", "other"}, "");
+        Files.writeString(Path.of(".gitletignore"), "build/\n");
+        writeFile(NOTWUG, "wug.log");
+        gitletCommand(new String[]{"add", ".gitletignore"}, "");
+        gitletCommand(new String[]{"add", "wug.log"}, "");
+        gitletCommand(new String[]{"commit", "Log file"}, "");
+        gitletCommand(new String[]{"checkout", "main"}, "");
+        writeFile(WUG, "wug.log");
+        gitletCommand(new String[]{"checkout", "other"}, "");
+        assertEquals(Files.readString(NOTWUG),
+                Files.readString(Path.of("wug.log")));
+    }
+
+    @Test
+    public void test51_mergeAfterPartialGraphRow() throws IOException {
+        i_setup2();
+        Path graph = Path.of(".gitlet", "commit-graph");
+        byte[] rows = Files.readAllBytes(graph);
+        Files.write(graph, Arrays.copyOf(rows, rows.length + 5));
+        gitletCommand(new String[]{"branch", "other"}, "");
+        writeFile(WUG2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change f.txt"}, "");
+        gitletCommand(new String[]{"checkout", "other"}, "");
+        writeFile(WUG3, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h.txt"}, "");
+        gitletCommand(new String[]{"checkout", "main"}, "");
+        gitletCommand(new String[]{"merge", "other"}, "");
+        assertFileEquals(WUG2, "f.txt");
+        assertFileEquals(NOTWUG, "g.txt");
+        assertFileEquals(WUG3, "h.txt");
+    }
+
+    @Test
+    public void test52_findRegexWithEscapes() throws IOException {
+        i_prelude1();
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 70; i += 1) {
+            Files.writeString(Path.of("f" + i + ".txt"), "version " + i);
+            script.append("add f").append(i).append(".txt\n");
+            script.append(i == 0 ? "commit \"ABC release\"\n"
+                    : "commit \"Version " + i + "\"\n");
+        }
+        Files.writeString(Path.of("script.txt"), script.toString());
+        gitletCommand(new String[]{"batch", "script.txt"}, "");
+        Matcher m = gitletCommandP(new String[]{"find", "ABC release"},
+                "([a-f0-9]+)");
+        String uid = m.group(1);
+        gitletCommand(new String[]{"find", "--regex", "\\x41BC rel"}, uid);
+        gitletCommand(new String[]{"find", "--regex", "\\u0041BC rel"},
+                uid);
+        gitletCommand(new String[]{"find", "--regex", "\\0101BC rel"}, uid);
+    }
+
+    @Test
+    public void test53_checkoutWritesOnlyChangedFiles() {
+        i_setup2();
+        gitletCommand(new String[]{"branch", "other"}, "");
+        gitletCommand(new String[]{"checkout", "other"}, "");
+        writeFile(WUG, "g.txt");
+        gitletCommand(new String[]{"add", "g.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change g.txt"}, "");
+        writeFile(WUG2, "f.txt");
+        gitletCommand(new String[]{"checkout", "main"}, "");
+        assertFileEquals(NOTWUG, "g.txt");
+        assertFileEquals(WUG2, "f.txt");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+                other
+
+                === Staged Files ===
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+                f.txt (modified)
+
+                === Untracked Files ===
+
+                """);
+    }
+
+    @Test
+    public void test54_ambiguousShortUid() {
+        i_prelude1();
+        List<String> uids = new ArrayList<>();
+        String first = null;
+        String second = null;
+        for (int i = 0; first == null; i += 1) {
+            writeFile(i % 2 == 0 ? WUG : NOTWUG, "wug.txt");
+            gitletCommand(new String[]{"add", "wug.txt"}, "");
+            gitletCommand(new String[]{"commit", "Version " + i}, "");
+            Matcher m = gitletCommandP(new String[]{"find", "Version " + i},
+                    "([a-f0-9]+)");
+            String uid = m.group(1);
+            for (String other : uids) {
+                if (other.charAt(0) == uid.charAt(0)) {
+                    first = other;
+                    second = uid;
+                }
+            }
+            uids.add(uid);
+        }
+        int common = 1;
+        while (first.charAt(common) == second.charAt(common)) {
+            common += 1;
+        }
+        String prefix = first.substring(0, common);
+        gitletCommand(new String[]{"checkout", prefix, "--", "wug.txt"},
+                "Commit id " + prefix + " is ambiguous; use more characters.");
+        gitletCommand(new String[]{"reset", prefix},
+                "Commit id " + prefix + " is ambiguous; use more characters.");
+        gitletCommand(new String[]{"checkout", first.substring(0, common + 1),
+            "--", "wug.txt"}, "");
+        String unknown = null;
+        for (int c = 0; unknown == null; c += 1) {
+            String candidate = prefix + Character.forDigit(c, 16);
+            if (uids.stream().noneMatch(u -> u.startsWith(candidate))) {
+                unknown = candidate;
+            }
+        }
+        gitletCommand(new String[]{"checkout", unknown, "--", "wug.txt"},
+                "No commit with that id exists.");
+        gitletCommand(new String[]{"reset", unknown},
+                "No commit with that id exists.");
+    }
+
+    @Test
+    public void test55_largeFileRoundTrip() throws IOException {
+        i_prelude1();
+        Random random = new Random(61);
+        byte[] small = new byte[1 << 18];
+        byte[] large = new byte[3 << 20];
+        random.nextBytes(small);
+        random.nextBytes(large);
+        Files.write(Path.of("small.bin"), small);
+        Files.write(Path.of("large.bin"), large);
+        gitletCommand(new String[]{"add", "small.bin"}, "");
+        gitletCommand(new String[]{"add", "large.bin"}, "");
+        gitletCommand(new String[]{"commit", "Version 1"}, "");
+        byte[] small2 = small.clone();
+        byte[] large2 = large.clone();
+        Arrays.fill(small2, 1000, 1100, (byte) 7);
+        Arrays.fill(large2, 1 << 20, (1 << 20) + 100, (byte) 7);
+        Files.write(Path.of("small.bin"), small2);
+        Files.write(Path.of("large.bin"), large2);
+        gitletCommand(new String[]{"add", "small.bin"}, "");
+        gitletCommand(new String[]{"add", "large.bin"}, "");
+        gitletCommand(new String[]{"commit", "Version 2"}, "");
+        byte[] large3 = large2.clone();
+        Arrays.fill(large3, 2 << 20, (2 << 20) + 100, (byte) 9);
+        Files.write(Path.of("large.bin"), large3);
+        System.setProperty("gitlet.rawBlobs", "true");
+        try {
+            gitletCommand(new String[]{"add", "large.bin"}, "");
+        } finally {
+            System.clearProperty("gitlet.rawBlobs");
+        }
+        gitletCommand(new String[]{"commit", "Version 3"}, "");
+        String uid1 = gitletCommandP(new String[]{"find", "Version 1"},
+                "([a-f0-9]+)").group(1);
+        String uid2 = gitletCommandP(new String[]{"find", "Version 2"},
+                "([a-f0-9]+)").group(1);
+        String uid3 = gitletCommandP(new String[]{"find", "Version 3"},
+                "([a-f0-9]+)").group(1);
+        gitletCommand(new String[]{"checkout", uid1, "--", "small.bin"}, "");
+        gitletCommand(new String[]{"checkout", uid1, "--", "large.bin"}, "");
+        assertArrayEquals(small, Files.readAllBytes(Path.of("small.bin")));
+        assertArrayEquals(large, Files.readAllBytes(Path.of("large.bin")));
+        gitletCommand(new String[]{"checkout", uid2, "--", "small.bin"}, "");
+        gitletCommand(new String[]{"checkout", uid2, "--", "large.bin"}, "");
+        assertArrayEquals(small2, Files.readAllBytes(Path.of("small.bin")));
+        assertArrayEquals(large2, Files.readAllBytes(Path.of("large.bin")));
+        gitletCommand(new String[]{"reset", uid1}, "");
+        assertArrayEquals(small, Files.readAllBytes(Path.of("small.bin")));
+        assertArrayEquals(large, Files.readAllBytes(Path.of("large.bin")));
+        gitletCommand(new String[]{"reset", uid3}, "");
+        assertArrayEquals(small2, Files.readAllBytes(Path.of("small.bin")));
+        assertArrayEquals(large3, Files.readAllBytes(Path.of("large.bin")));
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """);
+    }
+
+    @Test
+    public void test56_mergeWithoutGraph() throws IOException {
+        i_setup2();
+        gitletCommand(new String[]{"branch", "other"}, "");
+        writeFile(WUG2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change f.txt"}, "");
+        gitletCommand(new String[]{"checkout", "other"}, "");
+        writeFile(WUG3, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h.txt"}, "");
+        gitletCommand(new String[]{"checkout", "main"}, "");
+        Files.delete(Path.of(".gitlet", "commit-graph"));
+        gitletCommand(new String[]{"merge", "other"}, "");
+        assertFileEquals(WUG2, "f.txt");
+        assertFileEquals(NOTWUG, "g.txt");
+        assertFileEquals(WUG3, "h.txt");
+    }
+
+    @Test
+    public void test57_concurrentReadsShareCaches() throws Exception {
+        i_prelude1();
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 150; i += 1) {
+            Files.writeString(Path.of("f" + i + ".txt"), "version " + i);
+            script.append("add f").append(i).append(".txt\n");
+            script.append("commit \"Version ").append(i).append("\"\n");
+        }
+        Files.writeString(Path.of("script.txt"), script.toString());
+        gitletCommand(new String[]{"batch", "script.txt"}, "");
+        Repository warm = new Repository(
+                new File(System.getProperty("user.dir")));
+        int entries = countLog(warm);
+        assertEquals(151, entries);
+        LruCache<String, ?> cache = warm.getCommitCache();
+        long lookups = cache.getHits() + cache.getMisses();
+        int rounds = 200;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < 2; t += 1) {
+            Repository repo = new Repository(warm);
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int r = 0; r < rounds; r += 1) {
+                        assertEquals(entries, countLog(repo));
+                        assertEquals(1, repo.find("Version 7").size());
+                    }
+                } catch (Throwable excp) {
+                    synchronized (failures) {
+                        failures.add(excp);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(List.of(), failures);
+        assertEquals(entries, cache.size());
+        assertEquals(lookups * (1 + 2 * rounds),
+                cache.getHits() + cache.getMisses());
+    }
+
+    /** Returns the number of entries in the log of REPO. */
+    private static int countLog(Repository repo) {
+        int count = 0;
+        for (Iterator<LogEntry> log = repo.log(-1, null);
+             log.hasNext(); log.next()) {
+            count += 1;
+        }
+        return count;
+    }
+
+    @Test
+    public void test58_resetKeepsBranchNamedTemp() {
+        i_setup2();
+        String uid1 = gitletCommandP(new String[]{"find", "Two files"},
+                "([a-f0-9]+)").group(1);
+        gitletCommand(new String[]{"branch", "temp"}, "");
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h.txt"}, "");
+        String uid2 = gitletCommandP(new String[]{"find", "Add h.txt"},
+                "([a-f0-9]+)").group(1);
+        gitletCommand(new String[]{"reset", uid1}, "");
+        assertFileDoesNotExist("h.txt");
+        writeFile(WUG3, "h.txt");
+        gitletCommand(new String[]{"reset", uid2},
+                "There is an untracked file in the way;"
+                        + " delete it, or add and commit it first.");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+                temp
+
+                === Staged Files ===
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+                h.txt
+
+                """);
+        deleteFile("h.txt");
+        gitletCommand(new String[]{"reset", uid2}, "");
+        assertFileEquals(WUG2, "h.txt");
+        gitletCommand(new String[]{"checkout", "temp"}, "");
+        assertFileDoesNotExist("h.txt");
+        assertFileEquals(WUG, "f.txt");
+    }
+
+    @Test
+    public void test59_addNormalizesPath() throws IOException {
+        i_prelude1();
+        Files.createDirectories(Path.of("d"));
+        writeFile(WUG, "d/x.txt");
+        gitletCommand(new String[]{"add", "./d/x.txt"}, "");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+                d/x.txt
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """);
+        gitletCommand(new String[]{"commit", "Add d/x.txt"}, "");
+        gitletCommand(new String[]{"add", "d/../d/x.txt"}, "");
+        gitletCommand(new String[]{"add", "../x.txt"},
+                "File is outside the working directory.");
+        i_blankStatus();
+    }
+}
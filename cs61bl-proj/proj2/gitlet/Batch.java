@@ -0,0 +1,98 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Batch class. Runs many gitlet commands in one process, one per line of
+ * a script, each with a fresh Repository that shares the caches of all the
+ * commands before it. A line is split into arguments at spaces and tabs,
+ * except inside single or double quotes; a backslash takes the character
+ * after it literally, except inside single quotes. Blank lines and lines
+ * starting with # are skipped. After each command its line number and exit
+ * status are written to System.err, as LINE: exit STATUS.
+ * @author Nicole Ni and Ina Nierotka
+ */
+class Batch {
+
+    /**
+     * Runs every command read from IN, in order, even after one fails.
+     * Returns 1 if any command failed, otherwise 0.
+     * @param in is the script.
+     * @param warm is the repository whose caches are shared.
+     */
+    static int run(BufferedReader in, Repository warm) {
+        int result = 0;
+        int lineNumber = 0;
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber += 1;
+                if (line.isBlank() || line.strip().startsWith("#")) {
+                    continue;
+                }
+                int status;
+                String[] args = split(line);
+                if (args == null) {
+                    System.out.println("Unterminated quote.");
+                    status = 1;
+                } else if (args[0].equals("batch")
+                        || args[0].equals("daemon")) {
+                    System.out.println("That command cannot be run in a "
+                            + "batch.");
+                    status = 1;
+                } else {
+                    status = Main.run(args, new Repository(warm));
+                }
+                System.out.flush();
+                System.err.println(lineNumber + ": exit " + status);
+                result = Math.max(result, status);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        return result;
+    }
+
+    /** Returns the arguments of LINE, which is not blank, or null if it
+     *  has a quote that is not closed. */
+    static String[] split(String line) {
+        List<String> args = new ArrayList<>();
+        StringBuilder arg = new StringBuilder();
+        boolean inArg = false;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quote == '\'' && c != '\'') {
+                arg.append(c);
+            } else if (c == '\\' && i + 1 < line.length()) {
+                i += 1;
+                arg.append(line.charAt(i));
+                inArg = true;
+            } else if (quote != 0 && c == quote) {
+                quote = 0;
+            } else if (quote == 0 && (c == '\'' || c == '"')) {
+                quote = c;
+                inArg = true;
+            } else if (quote == 0 && (c == ' ' || c == '\t')) {
+                if (inArg) {
+                    args.add(arg.toString());
+                    arg.setLength(0);
+                    inArg = false;
+                }
+            } else {
+                arg.append(c);
+                inArg = true;
+            }
+        }
+        if (quote != 0) {
+            return null;
+        }
+        if (inArg) {
+            args.add(arg.toString());
+        }
+        return args.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,103 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Date;
+import java.util.TreeMap;
+
+/** A benchmark whose main program may be invoked as follows:
+ *      java gitlet.Benchmark [ROUNDS]
+ *  It times encoding and decoding a commit and a tree of FILES files,
+ *  ROUNDS times each (100000 by default), with the compact binary forms
+ *  written by Commit.encode and Tree.encode, and with Java serialization
+ *  of the map of File objects every commit used to carry, as stored
+ *  before trees. It prints the time per operation and the size of each
+ *  encoding.
+ *  @author Nicole Ni and Ina Nierotka
+ */
+public class Benchmark {
+
+    /** Number of files in the sample tree. */
+    private static final int FILES = 50;
+    /** Default number of rounds. */
+    private static final int ROUNDS = 100000;
+
+    /** The fields a Commit was serialized with before trees, kept only
+     *  to compare against. */
+    private static class SerializedCommit implements Serializable {
+        /** Version of the serialized form, which is only ever read back
+         *  by the same build. */
+        private static final long serialVersionUID = 1L;
+        /** The message. */
+        private String message;
+        /** The id of the parent. */
+        private String parentHash;
+        /** The id of the second parent. */
+        private String secondParentHash;
+        /** The time stamp. */
+        private Date timeStamp;
+        /** The blob file of each tracked file, by name. */
+        private TreeMap<String, File> blobs = new TreeMap<>();
+    }
+
+    /** Runs the benchmark. ARGS may hold the number of rounds. */
+    public static void main(String... args) {
+        int rounds = ROUNDS;
+        if (args.length > 0) {
+            rounds = Integer.parseInt(args[0]);
+        }
+        Commit commit = new Commit("Merged feature into main.",
+                Utils.sha1("parent"));
+        commit.setSecondParentHash(Utils.sha1("second parent"));
+        Tree tree = new Tree();
+        SerializedCommit old = new SerializedCommit();
+        old.message = commit.getMessage();
+        old.parentHash = commit.getParentHash();
+        old.secondParentHash = commit.getSecondParentHash();
+        old.timeStamp = commit.getTimeStamp();
+        File blobDir = Utils.join(System.getProperty("user.dir"), ".gitlet",
+                "allCommits", "blobStorage");
+        for (int i = 0; i < FILES; i += 1) {
+            String id = Utils.sha1("file " + i);
+            tree.getFiles().put("file" + i + ".txt", id);
+            old.blobs.put("file" + i + ".txt",
+                    Utils.join(blobDir, id));
+        }
+        commit.setTree(Utils.sha1(tree.encode()));
+
+        byte[] commitBytes = commit.encode();
+        byte[] treeBytes = tree.encode();
+        byte[] oldBytes = Utils.serialize(old);
+        System.out.printf("%-22s %12s %12s %8s%n", "", "encode ns/op",
+                "decode ns/op", "bytes");
+        report("Commit.encode", rounds, commitBytes.length,
+                () -> commit.encode(), () -> Commit.decode(commitBytes));
+        report("Tree.encode", rounds, treeBytes.length,
+                () -> tree.encode(), () -> Tree.decode(treeBytes));
+        report("Java serialization", rounds, oldBytes.length,
+                () -> Utils.serialize(old),
+                () -> Utils.deserialize(oldBytes, SerializedCommit.class));
+    }
+
+    /** Prints one line of results for NAME: the time per operation of
+     *  ENCODE and DECODE, run ROUNDS times each after as many rounds of
+     *  warm-up, and SIZE, the size of the encoding. */
+    private static void report(String name, int rounds, int size,
+                               Runnable encode, Runnable decode) {
+        System.out.printf("%-22s %12.0f %12.0f %8d%n", name,
+                time(encode, rounds), time(decode, rounds), size);
+    }
+
+    /** Returns the average time in nanoseconds of running TASK, measured
+     *  over ROUNDS runs after ROUNDS runs of warm-up. */
+    private static double time(Runnable task, int rounds) {
+        for (int i = 0; i < rounds; i += 1) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i += 1) {
+            task.run();
+        }
+        return (double) (System.nanoTime() - start) / rounds;
+    }
+}
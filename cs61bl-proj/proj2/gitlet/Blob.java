@@ -1,38 +1,77 @@
 package gitlet;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.Serializable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.function.Function;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
- * Blob class. Represents a snapshot of a file at a specific moment.
- * Includes the serialized contents of the file, the sha1 code of
- * the file's contents, and the name of the file, as well as
- * getter functions for each variable.
+ * Blob class. Represents a snapshot of a file's contents at a specific
+ * moment, identified by the sha1 code of those contents, which is the
+ * blob's id. The name of the file is not part of the blob; commits map
+ * each file name to its blob, so identical contents under different names
+ * share one blob. The contents themselves are never held in memory whole:
+ * they are streamed into the blobStorage directory when a file is added
+ * and streamed back out when it is checked out, a buffer at a time.
+ * A stored blob is deflated, and starts with a kind byte and the size of
+ * the contents. A FULL blob is followed by the contents, a DELTA blob by
+ * a Delta against another blob, and a CHUNKED blob by the raw ids of the
+ * chunks the contents were split into by a Chunker, each of which is
+ * stored as a FULL blob of its own. A large file may instead be stored
+ * raw, as an exact copy of its contents, so that checkout can copy it
+ * in the kernel or link to it.
  * @author Nicole Ni and Ina Nierotka
  */
 
-public class Blob implements Serializable {
-    /** Serialized content of the file. */
-    private byte[] content;
-    /** Unique sha1 code of the serialized content. */
+public class Blob {
+    /** Kind of a blob stored with its whole contents. */
+    static final int FULL = 0;
+    /** Kind of a blob stored as a Delta against another blob. */
+    static final int DELTA = 1;
+    /** Kind of a blob stored as a list of chunks. */
+    static final int CHUNKED = 2;
+    /** Largest contents held in memory whole, to make or apply a delta.
+     *  Larger files are only ever streamed, and stored in chunks. */
+    static final int IN_MEMORY_LIMIT = 1 << 20;
+    /** Bytes in a raw chunk id. */
+    private static final int ID_SIZE = Utils.UID_LENGTH / 2;
+
+    /** Unique sha1 code of the content, used as the blob's id. */
     private String contentSHA1;
-    /** Name of the file blob is created from. */
-    private String fileName;
 
     /**
-     * Constructor method. Creates a blob from a given file. Returns void.
+     * Constructor method. Creates a blob from a given file, hashing its
+     * contents a buffer at a time. Returns void.
      * @param file is the base file.
      */
     public Blob(File file) {
-        byte[] contents = Utils.readContents(file);
-        this.content = contents;
-        this.contentSHA1 = Utils.sha1(content);
-        this.fileName = file.getName();
+        MessageDigest md = Utils.sha1Digest();
+        try (InputStream in = new DigestInputStream(
+                Files.newInputStream(file.toPath()), md)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        this.contentSHA1 = Utils.toHex(md.digest());
     }
 
-    /** Getter method for file content, returns content. */
-    public byte[] getContent() {
-        return content;
+    /**
+     * Constructor method. Creates the blob with a known id, such as one
+     * tracked by a commit. Returns void.
+     * @param id is the sha1 code of the blob's contents.
+     */
+    Blob(String id) {
+        this.contentSHA1 = id;
     }
 
     /** Getter method for contentSHA1, returns contentSHA1. */
@@ -40,8 +79,188 @@ public class Blob implements Serializable {
         return contentSHA1;
     }
 
-    /** Getter method for name of the file, returns fileName. */
-    public String getFileName() {
-        return fileName;
+    /**
+     * Stores the SIZE bytes read from IN as a FULL blob in TARGET,
+     * hashing them as they are copied, and returns their sha1 code.
+     * Throws an error if IN does not hold exactly SIZE bytes, as when
+     * the file being read changes underneath us.
+     * @param in is the stream of the contents.
+     * @param size is the number of bytes in the contents.
+     * @param target is the file to write.
+     */
+    static String write(InputStream in, long size, File target) {
+        MessageDigest md = Utils.sha1Digest();
+        long copied;
+        try (DataOutputStream out = create(target, FULL, size)) {
+            copied = new DigestInputStream(in, md).transferTo(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        if (copied != size) {
+            throw Utils.error("File changed while it was being stored.");
+        }
+        return Utils.toHex(md.digest());
+    }
+
+    /**
+     * Stores the SIZE bytes read from IN in TARGET as they are, hashing
+     * them as they are copied, and returns their sha1 code. Throws an
+     * error if IN does not hold exactly SIZE bytes.
+     * @param in is the stream of the contents.
+     * @param size is the number of bytes in the contents.
+     * @param target is the file to write.
+     */
+    static String writeRaw(InputStream in, long size, File target) {
+        MessageDigest md = Utils.sha1Digest();
+        long copied;
+        try (OutputStream out = Files.newOutputStream(target.toPath())) {
+            copied = new DigestInputStream(in, md).transferTo(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        if (copied != size) {
+            throw Utils.error("File changed while it was being stored.");
+        }
+        return Utils.toHex(md.digest());
+    }
+
+    /**
+     * Stores DELTA, which rebuilds contents of SIZE bytes, as a DELTA
+     * blob in TARGET. Returns void.
+     * @param delta is the delta to store.
+     * @param size is the number of bytes in the contents it rebuilds.
+     * @param target is the file to write.
+     */
+    static void write(Delta delta, long size, File target) {
+        try (DataOutputStream out = create(target, DELTA, size)) {
+            delta.write(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /**
+     * Splits the SIZE bytes read from IN into chunks, passes each to
+     * STORECHUNK, which stores it and returns its id, and stores the list
+     * of those ids as a CHUNKED blob in TARGET. Returns the sha1 code of
+     * the whole contents, computed in the same pass. Throws an error if
+     * IN does not hold exactly SIZE bytes.
+     * @param in is the stream of the contents.
+     * @param size is the number of bytes in the contents.
+     * @param target is the file to write.
+     * @param storeChunk stores a chunk and returns its id.
+     */
+    static String writeChunked(InputStream in, long size, File target,
+                               Function<byte[], String> storeChunk) {
+        MessageDigest md = Utils.sha1Digest();
+        long copied = 0;
+        try (DataOutputStream out = create(target, CHUNKED, size)) {
+            Chunker chunker = new Chunker(new DigestInputStream(in, md));
+            for (byte[] chunk = chunker.next(); chunk != null;
+                 chunk = chunker.next()) {
+                out.write(Pack.toBytes(storeChunk.apply(chunk)));
+                copied += chunk.length;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        if (copied != size) {
+            throw Utils.error("File changed while it was being stored.");
+        }
+        return Utils.toHex(md.digest());
+    }
+
+    /**
+     * Returns a stream of the contents of a CHUNKED blob, given the stream
+     * LIST of its stored blob positioned after its size. Each chunk is
+     * opened with OPENCHUNK only once the one before it has been read.
+     * @param list is the stream of the chunk ids.
+     * @param openChunk returns a stream of the chunk with the given id.
+     */
+    static InputStream openChunks(DataInputStream list,
+                                  Function<String, InputStream> openChunk) {
+        return new ChunkedInputStream(list, openChunk);
+    }
+
+    /**
+     * Returns a stream of the stored blob read from STORED, inflated and
+     * positioned at its kind byte. Closing it closes STORED.
+     * @param stored is the stream of the stored bytes.
+     */
+    static DataInputStream open(InputStream stored) {
+        return new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(stored)));
+    }
+
+    /** Returns a deflating stream writing to TARGET, after writing the
+     *  header of a stored blob of the given KIND and SIZE to it. */
+    private static DataOutputStream create(File target, int kind,
+                                           long size) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new DeflaterOutputStream(
+                        Files.newOutputStream(target.toPath()))));
+        out.writeByte(kind);
+        out.writeLong(size);
+        return out;
+    }
+
+    /** An input stream reading the chunks of a CHUNKED blob in order. */
+    private static class ChunkedInputStream extends InputStream {
+        /** The stream of the chunk ids. */
+        private final DataInputStream list;
+        /** Opens a chunk by its id. */
+        private final Function<String, InputStream> openChunk;
+        /** The chunk being read, or null between chunks. */
+        private InputStream current;
+
+        /** Creates a stream of the chunks listed in IDS, opened with
+         *  OPENER. */
+        ChunkedInputStream(DataInputStream ids,
+                           Function<String, InputStream> opener) {
+            list = ids;
+            openChunk = opener;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            if (read(one, 0, 1) < 0) {
+                return -1;
+            }
+            return one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                if (current == null) {
+                    byte[] id = new byte[ID_SIZE];
+                    int n = list.readNBytes(id, 0, ID_SIZE);
+                    if (n == 0) {
+                        return -1;
+                    } else if (n < ID_SIZE) {
+                        throw Utils.error("Corrupt chunk list.");
+                    }
+                    current = openChunk.apply(Pack.toHex(id));
+                }
+                int n = current.read(b, off, len);
+                if (n >= 0) {
+                    return n;
+                }
+                current.close();
+                current = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current != null) {
+                current.close();
+            }
+            list.close();
+        }
     }
 }
@@ -0,0 +1,115 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Chunker class. Splits a stream into content-defined chunks with the
+ * FastCDC algorithm. A gear hash is rolled over the bytes, and a chunk ends
+ * where the hash has enough zero bits under a mask, so chunk boundaries
+ * depend only on nearby content: an insertion or append only changes the
+ * chunks around it, and all other chunks of a new version of a file are
+ * identical to those of the old one and are stored once. Chunks are at
+ * least MIN_SIZE and at most MAX_SIZE bytes. Until a chunk reaches
+ * AVG_SIZE a stricter mask is used, and after it a looser one, which
+ * keeps most chunks close to AVG_SIZE.
+ * @author Nicole Ni and Ina Nierotka
+ */
+class Chunker {
+
+    /** Smallest chunk, except for the last one of a stream. */
+    static final int MIN_SIZE = 16 * 1024;
+    /** Chunk size the masks aim for. */
+    static final int AVG_SIZE = 64 * 1024;
+    /** Largest chunk. */
+    static final int MAX_SIZE = 256 * 1024;
+    /** Mask used before AVG_SIZE: 18 bits, two more than AVG_SIZE's 16. */
+    private static final long MASK_SMALL = -1L << 46;
+    /** Mask used after AVG_SIZE: 14 bits, two fewer than AVG_SIZE's 16. */
+    private static final long MASK_LARGE = -1L << 50;
+    /** Seed of the gear table. It must never change, or new chunks of
+     *  old contents would no longer match the stored ones. */
+    private static final long SEED = 0x6769746c6574L;
+
+    /** Random value rolled into the hash for each byte value. */
+    private final long[] gear = new long[256];
+    /** The stream being split. */
+    private final InputStream in;
+    /** Bytes read from IN but not yet returned. */
+    private final byte[] buf = new byte[MAX_SIZE];
+    /** Start of the unreturned bytes in buf. */
+    private int start;
+    /** End of the unreturned bytes in buf. */
+    private int end;
+    /** True once IN has been read to its end. */
+    private boolean eof;
+
+    /**
+     * Creates a chunker reading from IN. Returns void.
+     * @param stream is the stream to split.
+     */
+    Chunker(InputStream stream) {
+        in = stream;
+        Random random = new Random(SEED);
+        for (int i = 0; i < gear.length; i += 1) {
+            gear[i] = random.nextLong();
+        }
+    }
+
+    /** Returns the next chunk of the stream, or null at its end. */
+    byte[] next() throws IOException {
+        fill();
+        if (start == end) {
+            return null;
+        }
+        int length = cut(start, end - start);
+        byte[] chunk = Arrays.copyOfRange(buf, start, start + length);
+        start += length;
+        return chunk;
+    }
+
+    /** Returns the length of the chunk at the start of the N bytes of
+     *  buf from OFF on. */
+    private int cut(int off, int n) {
+        if (n <= MIN_SIZE) {
+            return n;
+        }
+        int normal = Math.min(n, AVG_SIZE);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            hash = (hash << 1) + gear[buf[off + i] & 0xff];
+            if ((hash & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < n; i += 1) {
+            hash = (hash << 1) + gear[buf[off + i] & 0xff];
+            if ((hash & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return n;
+    }
+
+    /** Moves the unreturned bytes to the front of buf and reads from IN
+     *  until buf is full or IN ends. */
+    private void fill() throws IOException {
+        if (eof || end - start == buf.length) {
+            return;
+        }
+        System.arraycopy(buf, start, buf, 0, end - start);
+        end -= start;
+        start = 0;
+        while (end < buf.length) {
+            int n = in.read(buf, end, buf.length - end);
+            if (n < 0) {
+                eof = true;
+                return;
+            }
+            end += n;
+        }
+    }
+}
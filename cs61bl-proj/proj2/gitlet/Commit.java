@@ -1,21 +1,28 @@
 package gitlet;
 
-import java.io.File;
-import java.io.Serializable;
-import java.text.SimpleDateFormat;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
-import java.util.TreeMap;
 
 
 /** Represents a gitlet Commit object.
  *  Includes instance variables of the message, parentSHA1, timestamp,
- *  & all the blobs stored. The two class variables are for date format.
- *  Methods are getters for all variables except the date pattern, and
- *  one helper function to Repository.add().
+ *  & the id of the Tree of the working directory. The class variable
+ *  PATTERN is the date format, which dateFormatter() turns into the
+ *  DateTimeFormatter log prints dates with; the others are used by
+ *  encode. Methods are getters for all instance variables, and setters
+ *  used by Repository.commit().
+ *  Commits are stored in the compact binary form written by encode.
  *
  *  @author Nicole Ni & Ina Nierotka
  */
-public class Commit implements Serializable {
+public class Commit {
 
     /** The message of this Commit. */
     private String message;
@@ -25,17 +32,20 @@ public class Commit implements Serializable {
     private String secondParentHash = null;
     /** The time stamp of when the Commit was created. */
     private Date timeStamp = new Date(0);
-    /** The map of tracked files and respective blobs stored in the Commit. */
-    private TreeMap<String, File> blobs = new TreeMap<>();
+    /** The id of the root Tree, holding the tracked files and their blobs. */
+    private String tree;
     /** The pattern of the date used for printing. */
     private static final String PATTERN = "E MMM d HH:mm:ss yyyy Z";
-    /** Variable necessary to implement date format pattern. */
-    private static final SimpleDateFormat SIMPLE_DATE_FORMAT =
-            new SimpleDateFormat(PATTERN);
+    /** Version number written at the start of an encoded commit. */
+    private static final int VERSION = 1;
+    /** Flag of an encoded commit with a parent. */
+    private static final int HAS_PARENT = 1;
+    /** Flag of an encoded commit with a second parent. */
+    private static final int HAS_SECOND_PARENT = 2;
 
     /**
      * Constructor method for the commit. Sets all instance variables
-     * except blobs, which is appended in add.
+     * except the tree, which is set in commit.
      * @param commitMessage This is a string of the commit message passed in.
      * @param parent This is a string of the SHA1 code of the parent.
      */
@@ -56,9 +66,9 @@ public class Commit implements Serializable {
         return message;
     }
 
-    /** Getter method for the list of blobs, returns blobs. */
-    public TreeMap<String, File> getBlobs() {
-        return blobs;
+    /** Getter method for the root tree id, returns tree. */
+    public String getTree() {
+        return tree;
     }
 
     /** Getter method for the parentSHA1, returns parentHash. */
@@ -66,9 +76,11 @@ public class Commit implements Serializable {
         return parentHash;
     }
 
-    /** Getter method for date format, returns SIMPLE_DATE_FORMAT. */
-    public static SimpleDateFormat getSimpleDateFormat() {
-        return SIMPLE_DATE_FORMAT;
+    /** Returns a formatter printing dates in PATTERN, in local time,
+     *  which is safe to share between threads. */
+    static DateTimeFormatter dateFormatter() {
+        return DateTimeFormatter.ofPattern(PATTERN)
+                .withZone(ZoneId.systemDefault());
     }
 
     /** Getter method for secondary parent, returns secondParentHash. */
@@ -86,14 +98,11 @@ public class Commit implements Serializable {
     }
 
     /**
-     * Helper method for Repository.commit(). Actual functionality
-     * of adding the blob files to the Commit. Returns void.
-     * @param blob is the file of the blob in the Blobs directory
-     *                    within .gitlet directory.
-     * @param name is the name of the file the blob is created from.
+     * Setter method for the root tree. Used in commit, returns void.
+     * @param treeID This is the id of the Tree of the tracked files.
      */
-    public void addBlob(String name, File blob) {
-        this.blobs.put(name, blob);
+    public void setTree(String treeID) {
+        tree = treeID;
     }
 
     /**override the equals method for Commit object.
@@ -103,4 +112,78 @@ public class Commit implements Serializable {
     public boolean equals(Commit other) {
         return timeStamp.equals(other.timeStamp);
     }
+
+    /**
+     * Returns the bytes this commit is stored as, whose sha1 code is its
+     * id: a version byte, a byte of flags telling which parents there
+     * are, the raw ids of those parents, the timestamp in milliseconds,
+     * the raw id of the tree, and the length and UTF-8 bytes of the
+     * message. Unlike Java serialization, no class descriptors are
+     * written, and decode reads them back without reflection.
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            int flags = 0;
+            if (parentHash != null) {
+                flags |= HAS_PARENT;
+            }
+            if (secondParentHash != null) {
+                flags |= HAS_SECOND_PARENT;
+            }
+            out.writeByte(VERSION);
+            out.writeByte(flags);
+            if (parentHash != null) {
+                out.write(Pack.toBytes(parentHash));
+            }
+            if (secondParentHash != null) {
+                out.write(Pack.toBytes(secondParentHash));
+            }
+            out.writeLong(timeStamp.getTime());
+            out.write(Pack.toBytes(tree));
+            byte[] text = message.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(text.length);
+            out.write(text);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the commit encoded in BYTES by encode.
+     * @param bytes This is the encoded commit.
+     */
+    public static Commit decode(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(bytes))) {
+            if (in.readByte() != VERSION) {
+                throw Utils.error("Unknown commit version.");
+            }
+            int flags = in.readByte();
+            String parent = null;
+            if ((flags & HAS_PARENT) != 0) {
+                parent = readID(in);
+            }
+            Commit commit = new Commit(null, parent);
+            if ((flags & HAS_SECOND_PARENT) != 0) {
+                commit.secondParentHash = readID(in);
+            }
+            commit.timeStamp = new Date(in.readLong());
+            commit.tree = readID(in);
+            byte[] text = new byte[in.readInt()];
+            in.readFully(text);
+            commit.message = new String(text, StandardCharsets.UTF_8);
+            return commit;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns the hexadecimal form of the raw id read from IN. */
+    static String readID(DataInputStream in) throws IOException {
+        byte[] id = new byte[Utils.UID_LENGTH / 2];
+        in.readFully(id);
+        return Pack.toHex(id);
+    }
 }
@@ -0,0 +1,240 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * CommitGraph class. Represents the commit-graph file, which holds one
+ * fixed-width row per commit: its id, the row numbers of its parents, its
+ * generation number and its date. Rows are appended as commits are made, so
+ * parents always come before their children. A commit's generation number
+ * is one more than the largest generation of its parents (the initial commit
+ * has generation 1), so no ancestor of a commit can have a generation as
+ * large as the commit's own. This lets merge-base walk the two histories
+ * newest-generation first and stop at the first common ancestor it finds,
+ * without reading any commit objects.
+ * @author Nicole Ni and Ina Nierotka
+ */
+class CommitGraph {
+
+    /** Version number written in the header. */
+    private static final int VERSION = 1;
+    /** Magic string at the start of the file. */
+    private static final String MAGIC = "GGRF";
+    /** Bytes in the header: magic string and version. */
+    private static final int HEADER_SIZE = 8;
+    /** Bytes in a raw SHA-1 id. */
+    private static final int ID_SIZE = Utils.UID_LENGTH / 2;
+    /** Bytes in one row: id, two parent rows, generation and date. */
+    private static final int ROW_SIZE = ID_SIZE + 4 + 4 + 4 + 8;
+    /** Parent row of a missing parent. */
+    private static final int NONE = -1;
+    /** Flag of a row reachable from the first commit of a merge-base. */
+    private static final int FIRST = 1;
+    /** Flag of a row reachable from the second commit of a merge-base. */
+    private static final int SECOND = 2;
+
+    /** The commit-graph file. */
+    private final File file;
+    /** Ids of the commits, by row. */
+    private final List<String> ids = new ArrayList<>();
+    /** Row of each commit id. */
+    private final HashMap<String, Integer> rows = new HashMap<>();
+    /** First and second parent rows, by row. */
+    private final List<int[]> parents = new ArrayList<>();
+    /** Generation numbers, by row. */
+    private final List<Integer> generations = new ArrayList<>();
+    /** Commit dates in milliseconds, by row. */
+    private final List<Long> dates = new ArrayList<>();
+
+    /**
+     * Loads the commit-graph in FILE, or an empty graph if FILE does not
+     * exist. Use exists() to tell the two apart.
+     * @param graphFile is the commit-graph file.
+     */
+    CommitGraph(File graphFile) {
+        file = graphFile;
+        if (!file.isFile()) {
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Utils.readContents(file));
+        if (buf.remaining() < HEADER_SIZE) {
+            return;
+        }
+        byte[] magic = new byte[MAGIC.length()];
+        buf.get(magic);
+        if (!MAGIC.equals(new String(magic, StandardCharsets.US_ASCII))
+                || buf.getInt() != VERSION) {
+            throw Utils.error("Corrupt commit-graph file.");
+        }
+        byte[] id = new byte[ID_SIZE];
+        while (buf.remaining() >= ROW_SIZE) {
+            buf.get(id);
+            int[] rowParents = {buf.getInt(), buf.getInt()};
+            int generation = buf.getInt();
+            long date = buf.getLong();
+            remember(Pack.toHex(id), rowParents, generation, date);
+        }
+    }
+
+    /** Returns true if the commit-graph file exists. */
+    boolean exists() {
+        return file.isFile();
+    }
+
+    /** Returns true if the commit with the given id is in the graph.
+     * @param id is the full id of the commit. */
+    boolean contains(String id) {
+        return rows.containsKey(id);
+    }
+
+    /**
+     * Adds a row for a new commit, both here and at the end of the file,
+     * creating the file if needed. Its parents must already be in the
+     * graph. If the last row of the file was cut short, the file is
+     * removed and the graph emptied instead, so that rows are never
+     * appended at the wrong place, and the graph is rebuilt in full the
+     * next time it is needed. Returns void.
+     * @param id is the full id of the new commit.
+     * @param parent is the id of its parent, or null.
+     * @param secondParent is the id of its second parent, or null.
+     * @param date is its timestamp in milliseconds.
+     */
+    void add(String id, String parent, String secondParent, long date) {
+        if (file.isFile()
+                && (file.length() - HEADER_SIZE) % ROW_SIZE != 0) {
+            file.delete();
+            ids.clear();
+            rows.clear();
+            parents.clear();
+            generations.clear();
+            dates.clear();
+            return;
+        }
+        int[] rowParents = {row(parent), row(secondParent)};
+        int generation = 0;
+        for (int p : rowParents) {
+            if (p != NONE) {
+                generation = Math.max(generation, generations.get(p));
+            }
+        }
+        generation += 1;
+        boolean fresh = !file.isFile();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            if (fresh) {
+                out.write(MAGIC.getBytes(StandardCharsets.US_ASCII));
+                out.writeInt(VERSION);
+            }
+            out.write(Pack.toBytes(id));
+            out.writeInt(rowParents[0]);
+            out.writeInt(rowParents[1]);
+            out.writeInt(generation);
+            out.writeLong(date);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        remember(id, rowParents, generation, date);
+    }
+
+    /**
+     * Returns the id of the best common ancestor of the two given commits:
+     * the one with the largest generation number, the latest date breaking
+     * ties. Both commits must be in the graph. Rows are visited largest
+     * generation first and marked with the side(s) they are reachable from;
+     * since all of a row's children are visited before it, a row's marks
+     * are complete when it is visited, and the walk stops as soon as the
+     * first generation holding a row marked by both sides is done.
+     * @param first is the full id of one commit.
+     * @param second is the full id of the other commit.
+     */
+    String mergeBase(String first, String second) {
+        int[] flags = new int[ids.size()];
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+                (a, b) -> Integer.compare(generations.get(b),
+                        generations.get(a)));
+        int firstRow = row(first);
+        int secondRow = row(second);
+        flags[firstRow] |= FIRST;
+        flags[secondRow] |= SECOND;
+        queue.add(firstRow);
+        if (secondRow != firstRow) {
+            queue.add(secondRow);
+        }
+        int best = NONE;
+        while (!queue.isEmpty()) {
+            int row = queue.poll();
+            if (best != NONE && generations.get(row) < generations.get(best)) {
+                break;
+            }
+            if (flags[row] == (FIRST | SECOND)) {
+                if (best == NONE || dates.get(row) > dates.get(best)) {
+                    best = row;
+                }
+                continue;
+            }
+            for (int p : parents.get(row)) {
+                if (p != NONE && (flags[p] | flags[row]) != flags[p]) {
+                    if (flags[p] == 0) {
+                        queue.add(p);
+                    }
+                    flags[p] |= flags[row];
+                }
+            }
+        }
+        if (best == NONE) {
+            return null;
+        }
+        return ids.get(best);
+    }
+
+    /**
+     * Rewrites the file from scratch with the given commits, which must
+     * be ordered so that parents come before their children. Returns void.
+     * @param graphFile is the commit-graph file.
+     * @param commitIDs are the ids of the commits.
+     * @param commits are the commits, in the same order.
+     */
+    static void write(File graphFile, List<String> commitIDs,
+                      List<Commit> commits) {
+        graphFile.delete();
+        CommitGraph graph = new CommitGraph(graphFile);
+        for (int i = 0; i < commits.size(); i += 1) {
+            Commit c = commits.get(i);
+            graph.add(commitIDs.get(i), c.getParentHash(),
+                    c.getSecondParentHash(), c.getTimeStamp().getTime());
+        }
+    }
+
+    /** Returns the row of the given commit id, or NONE if ID is null.
+     * @param id is the full id of a commit in the graph, or null. */
+    private int row(String id) {
+        if (id == null) {
+            return NONE;
+        }
+        Integer row = rows.get(id);
+        if (row == null) {
+            throw Utils.error("Commit %s is not in the commit-graph.", id);
+        }
+        return row;
+    }
+
+    /** Records a row in memory. */
+    private void remember(String id, int[] rowParents, int generation,
+                          long date) {
+        rows.put(id, ids.size());
+        ids.add(id);
+        parents.add(rowParents);
+        generations.add(generation);
+        dates.add(date);
+    }
+}
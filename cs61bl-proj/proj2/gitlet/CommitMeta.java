@@ -0,0 +1,338 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * CommitMeta class. Represents the commit-meta file, which holds one
+ * fixed-width row per commit with the columns global-log and find need: its
+ * id, date, parent ids, and the offset and length of its message in a
+ * separate heap file of UTF-8 messages. Rows and messages are appended as
+ * commits are made, and both files are read through memory maps, so those
+ * commands scan two files instead of reading and decoding every commit.
+ * Rows are in no particular order.
+ * @author Nicole Ni and Ina Nierotka
+ */
+class CommitMeta {
+
+    /** Version number written in the header. */
+    private static final int VERSION = 1;
+    /** Magic string at the start of the file. */
+    private static final String MAGIC = "GMET";
+    /** Bytes in the header: magic string and version. */
+    private static final int HEADER_SIZE = 8;
+    /** Bytes in a raw SHA-1 id. */
+    private static final int ID_SIZE = Utils.UID_LENGTH / 2;
+    /** Offset of the date column in a row. */
+    private static final int DATE = ID_SIZE;
+    /** Offset of the flags column in a row. */
+    private static final int FLAGS = DATE + 8;
+    /** Offset of the parent column in a row. */
+    private static final int PARENT = FLAGS + 1;
+    /** Offset of the second parent column in a row. */
+    private static final int SECOND_PARENT = PARENT + ID_SIZE;
+    /** Offset of the message offset column in a row. */
+    private static final int MESSAGE = SECOND_PARENT + ID_SIZE;
+    /** Offset of the message length column in a row. */
+    private static final int LENGTH = MESSAGE + 8;
+    /** Bytes in one row. */
+    private static final int ROW_SIZE = LENGTH + 4;
+    /** Flag of a row with a parent. */
+    private static final int HAS_PARENT = 1;
+    /** Flag of a row with a second parent. */
+    private static final int HAS_SECOND_PARENT = 2;
+
+    /** The rows, or null if the files are missing or do not agree. */
+    private final ByteBuffer rows;
+    /** The message heap, or null if rows is. */
+    private final ByteBuffer heap;
+    /** Number of rows. */
+    private final int size;
+    /** Whether the rows were rebuilt in memory, and never written. */
+    private final boolean inMemory;
+
+    /**
+     * Maps the commit-meta file METAFILE and its message heap HEAPFILE.
+     * If either is missing, the last row was cut short, or it points past
+     * the end of the heap, the result is empty and exists() is false.
+     * @param metaFile is the commit-meta file.
+     * @param heapFile is the message heap file.
+     */
+    CommitMeta(File metaFile, File heapFile) {
+        ByteBuffer r = null;
+        ByteBuffer h = null;
+        int count = 0;
+        if (metaFile.isFile() && heapFile.isFile()) {
+            r = map(metaFile);
+            h = map(heapFile);
+            byte[] magic = new byte[MAGIC.length()];
+            if (r.limit() < HEADER_SIZE) {
+                throw Utils.error("Corrupt commit-meta file.");
+            }
+            r.get(0, magic);
+            if (!MAGIC.equals(new String(magic, StandardCharsets.US_ASCII))
+                    || r.getInt(MAGIC.length()) != VERSION) {
+                throw Utils.error("Corrupt commit-meta file.");
+            }
+            count = (r.limit() - HEADER_SIZE) / ROW_SIZE;
+            int last = rowStart(count - 1);
+            if ((r.limit() - HEADER_SIZE) % ROW_SIZE != 0 || count > 0
+                    && r.getLong(last + MESSAGE) + r.getInt(last + LENGTH)
+                    > h.limit()) {
+                r = null;
+                h = null;
+                count = 0;
+            }
+        }
+        rows = r;
+        heap = h;
+        size = count;
+        inMemory = false;
+    }
+
+    /** Constructor of the rows ROWS, with the message heap HEAP, both
+     *  held in memory. */
+    private CommitMeta(ByteBuffer rows, ByteBuffer heap) {
+        this.rows = rows;
+        this.heap = heap;
+        size = (rows.limit() - HEADER_SIZE) / ROW_SIZE;
+        inMemory = true;
+    }
+
+    /** Returns true if both files exist and agree with each other. */
+    boolean exists() {
+        return rows != null;
+    }
+
+    /** Returns true if the rows are held in memory instead of in the
+     *  files. */
+    boolean inMemory() {
+        return inMemory;
+    }
+
+    /** Returns the number of rows. */
+    int size() {
+        return size;
+    }
+
+    /** Returns the commit id in the given row.
+     * @param row is the row number. */
+    String id(int row) {
+        return readID(rowStart(row));
+    }
+
+    /** Returns the date in milliseconds in the given row.
+     * @param row is the row number. */
+    long date(int row) {
+        return rows.getLong(rowStart(row) + DATE);
+    }
+
+    /** Returns the parent id in the given row, or null.
+     * @param row is the row number. */
+    String parent(int row) {
+        int start = rowStart(row);
+        if ((rows.get(start + FLAGS) & HAS_PARENT) == 0) {
+            return null;
+        }
+        return readID(start + PARENT);
+    }
+
+    /** Returns the second parent id in the given row, or null.
+     * @param row is the row number. */
+    String secondParent(int row) {
+        int start = rowStart(row);
+        if ((rows.get(start + FLAGS) & HAS_SECOND_PARENT) == 0) {
+            return null;
+        }
+        return readID(start + SECOND_PARENT);
+    }
+
+    /** Returns the message in the given row.
+     * @param row is the row number. */
+    String message(int row) {
+        int start = rowStart(row);
+        byte[] bytes = new byte[rows.getInt(start + LENGTH)];
+        heap.get((int) rows.getLong(start + MESSAGE), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns true if the message in the given row is MESSAGE, encoded
+     * as UTF-8. Compares the bytes in place, without decoding.
+     * @param row is the row number.
+     * @param message is the UTF-8 encoding of the message.
+     */
+    boolean messageEquals(int row, byte[] message) {
+        int start = rowStart(row);
+        if (rows.getInt(start + LENGTH) != message.length) {
+            return false;
+        }
+        int offset = (int) rows.getLong(start + MESSAGE);
+        return heap.slice(offset, message.length)
+                .equals(ByteBuffer.wrap(message));
+    }
+
+    /**
+     * Appends a row for a new commit to METAFILE, and its message to
+     * HEAPFILE, creating them if needed. The message goes first, so
+     * that a row never points past the end of the heap. If the last row
+     * was cut short, both files are removed instead, so that they are
+     * rebuilt in full the next time they are needed. Returns void.
+     * @param metaFile is the commit-meta file.
+     * @param heapFile is the message heap file.
+     * @param id is the full id of the new commit.
+     * @param commit is the new commit.
+     */
+    static void append(File metaFile, File heapFile, String id,
+                       Commit commit) {
+        if (metaFile.isFile()
+                && (metaFile.length() - HEADER_SIZE) % ROW_SIZE != 0) {
+            metaFile.delete();
+            heapFile.delete();
+            return;
+        }
+        byte[] message = commit.getMessage().getBytes(StandardCharsets.UTF_8);
+        long offset = heapFile.length();
+        try (FileOutputStream out = new FileOutputStream(heapFile, true)) {
+            out.write(message);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        boolean fresh = !metaFile.isFile();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(metaFile, true)))) {
+            if (fresh) {
+                writeHeader(out);
+            }
+            writeRow(out, id, commit, offset, message.length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /**
+     * Rewrites both files from scratch with the given commits. Each is
+     * written to a temporary file and moved into place, the heap last,
+     * after the old rows are gone. Returns void.
+     * @param metaFile is the commit-meta file.
+     * @param heapFile is the message heap file.
+     * @param commitIDs are the ids of the commits.
+     * @param commits are the commits, in the same order.
+     */
+    static void write(File metaFile, File heapFile, List<String> commitIDs,
+                      List<Commit> commits) {
+        File metaTmp = Utils.tempFileFor(metaFile);
+        File heapTmp = Utils.tempFileFor(heapFile);
+        try (DataOutputStream meta = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(metaTmp)));
+             BufferedOutputStream messages = new BufferedOutputStream(
+                     new FileOutputStream(heapTmp))) {
+            writeAll(meta, messages, commitIDs, commits);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        try {
+            Files.deleteIfExists(metaFile.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        Utils.replace(heapTmp, heapFile);
+        Utils.replace(metaTmp, metaFile);
+    }
+
+    /**
+     * Returns the rows of the given commits, with their message heap,
+     * held in memory instead of written to the files.
+     * @param commitIDs are the ids of the commits.
+     * @param commits are the commits, in the same order.
+     */
+    static CommitMeta inMemory(List<String> commitIDs, List<Commit> commits) {
+        ByteArrayOutputStream meta = new ByteArrayOutputStream();
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        try {
+            writeAll(new DataOutputStream(meta), messages, commitIDs,
+                    commits);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        return new CommitMeta(ByteBuffer.wrap(meta.toByteArray()),
+                ByteBuffer.wrap(messages.toByteArray()));
+    }
+
+    /** Writes the header and the rows of the given commits to META, and
+     *  their messages to MESSAGES. */
+    private static void writeAll(DataOutputStream meta, OutputStream messages,
+                                 List<String> commitIDs, List<Commit> commits)
+            throws IOException {
+        writeHeader(meta);
+        long offset = 0;
+        for (int i = 0; i < commits.size(); i += 1) {
+            byte[] message = commits.get(i).getMessage()
+                    .getBytes(StandardCharsets.UTF_8);
+            messages.write(message);
+            writeRow(meta, commitIDs.get(i), commits.get(i), offset,
+                    message.length);
+            offset += message.length;
+        }
+        meta.flush();
+    }
+
+    /** Writes the magic string and version to OUT. */
+    private static void writeHeader(DataOutputStream out) throws IOException {
+        out.write(MAGIC.getBytes(StandardCharsets.US_ASCII));
+        out.writeInt(VERSION);
+    }
+
+    /** Writes the row of commit COMMIT with id ID, whose message is
+     *  LENGTH bytes at OFFSET in the heap, to OUT. */
+    private static void writeRow(DataOutputStream out, String id,
+                                 Commit commit, long offset, int length)
+            throws IOException {
+        byte[] none = new byte[ID_SIZE];
+        String parent = commit.getParentHash();
+        String secondParent = commit.getSecondParentHash();
+        out.write(Pack.toBytes(id));
+        out.writeLong(commit.getTimeStamp().getTime());
+        out.writeByte((parent != null ? HAS_PARENT : 0)
+                | (secondParent != null ? HAS_SECOND_PARENT : 0));
+        out.write(parent != null ? Pack.toBytes(parent) : none);
+        out.write(secondParent != null ? Pack.toBytes(secondParent) : none);
+        out.writeLong(offset);
+        out.writeInt(length);
+    }
+
+    /** Returns the position of the given row in the rows. */
+    private static int rowStart(int row) {
+        return HEADER_SIZE + row * ROW_SIZE;
+    }
+
+    /** Returns the hex id in the rows at START. */
+    private String readID(int start) {
+        byte[] id = new byte[ID_SIZE];
+        rows.get(start, id);
+        return Pack.toHex(id);
+    }
+
+    /** Returns a read-only memory map of FILE. */
+    private static MappedByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+}
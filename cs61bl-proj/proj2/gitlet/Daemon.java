@@ -0,0 +1,187 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Daemon class. Runs gitlet commands for other processes, over a Unix
+ * domain socket in the .gitlet directory, so that they skip loading and
+ * warming up a JVM of their own. One command is run at a time, each with a
+ * fresh Repository that shares the caches of all the commands before it.
+ * A client sends the arguments of a command, each followed by a zero byte,
+ * and closes its side of the connection; it gets back what the command
+ * printed, to standard output or standard error, as it is printed, then a
+ * zero byte and the exit status of the command in decimal, which is what
+ * it would have been had the command been run without a daemon. Main forwards its command this way whenever the
+ * socket exists and a daemon answers on it.
+ * @author Nicole Ni and Ina Nierotka
+ */
+class Daemon {
+
+    /** Returns the socket a daemon for REPO listens on. */
+    static File socket(Repository repo) {
+        return Utils.join(repo.getGitletDir(), "daemon.sock");
+    }
+
+    /**
+     * Serves commands on the socket of WARM until it is sent daemon
+     * --stop, using WARM for its caches. Prints a message instead if a
+     * daemon is already listening. Returns void.
+     * @param warm is the repository whose caches are shared.
+     */
+    static void serve(Repository warm) {
+        File socket = socket(warm);
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(
+                socket.toPath());
+        if (socket.exists()) {
+            try {
+                SocketChannel.open(address).close();
+                System.out.println("A daemon is already running.");
+                return;
+            } catch (IOException excp) {
+                socket.delete();
+            }
+        }
+        PrintStream console = System.out;
+        try (ServerSocketChannel server = ServerSocketChannel.open(
+                StandardProtocolFamily.UNIX)) {
+            server.bind(address);
+            boolean running = true;
+            while (running) {
+                try (SocketChannel client = server.accept()) {
+                    running = handle(client, warm);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        } finally {
+            System.setOut(console);
+            socket.delete();
+        }
+    }
+
+    /**
+     * Runs the command sent by CLIENT, sending back its output and exit
+     * status. Returns false if the command was daemon --stop. A client
+     * that goes away early only loses the rest of its output. The
+     * daemon's own System.out and System.err are put back even if the
+     * command throws an Error.
+     */
+    private static boolean handle(SocketChannel client, Repository warm) {
+        String[] args;
+        try {
+            args = readArgs(Channels.newInputStream(client));
+        } catch (IOException excp) {
+            return true;
+        }
+        PrintStream out = new PrintStream(new BufferedOutputStream(
+                Channels.newOutputStream(client)), false);
+        PrintStream console = System.out;
+        PrintStream errors = System.err;
+        int status = 0;
+        boolean running = true;
+        System.setOut(out);
+        System.setErr(out);
+        try {
+            if (args.length == 2 && args[0].equals("daemon")
+                    && args[1].equals("--stop")) {
+                running = false;
+            } else if (args.length >= 1 && args[0].equals("daemon")) {
+                System.out.println("A daemon is already running.");
+            } else if (args.length == 0) {
+                System.out.println("Please enter a command.");
+            } else {
+                status = Main.run(args, new Repository(warm));
+            }
+        } finally {
+            System.setOut(console);
+            System.setErr(errors);
+        }
+        out.write(0);
+        out.print(status);
+        out.flush();
+        return running;
+    }
+
+    /**
+     * Sends ARGS to the daemon listening on the socket of REPO and copies
+     * what it prints to System.out as it arrives. Returns the exit status
+     * of the command, or -1 if no daemon answered, in which case nothing
+     * was sent.
+     * @param repo is the repository the command is run on.
+     * @param args are the arguments of the command.
+     */
+    static int forward(Repository repo, String[] args) {
+        File socket = socket(repo);
+        if (!socket.exists()) {
+            return -1;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(
+                    UnixDomainSocketAddress.of(socket.toPath()));
+        } catch (IOException excp) {
+            return -1;
+        }
+        try (SocketChannel daemon = channel) {
+            OutputStream out = Channels.newOutputStream(daemon);
+            ByteArrayOutputStream request = new ByteArrayOutputStream();
+            for (String arg : args) {
+                request.write(arg.getBytes(StandardCharsets.UTF_8));
+                request.write(0);
+            }
+            out.write(request.toByteArray());
+            daemon.shutdownOutput();
+            InputStream in = Channels.newInputStream(daemon);
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                int end = 0;
+                while (end < n && buf[end] != 0) {
+                    end += 1;
+                }
+                System.out.write(buf, 0, end);
+                if (end < n) {
+                    ByteArrayOutputStream status = new ByteArrayOutputStream();
+                    status.write(buf, end + 1, n - end - 1);
+                    in.transferTo(status);
+                    System.out.flush();
+                    return Integer.parseInt(status.toString(
+                            StandardCharsets.US_ASCII));
+                }
+            }
+            throw Utils.error("The daemon closed the connection.");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns the arguments read from IN: strings each followed by a
+     *  zero byte, up to the end of IN. */
+    private static String[] readArgs(InputStream in) throws IOException {
+        byte[] request = in.readAllBytes();
+        List<String> args = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < request.length; i += 1) {
+            if (request[i] == 0) {
+                args.add(new String(request, start, i - start,
+                        StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        return args.toArray(new String[0]);
+    }
+}
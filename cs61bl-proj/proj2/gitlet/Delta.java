@@ -0,0 +1,204 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Delta class. Stored in place of a blob's contents when a file changed
+ * only a little since its previous version. Holds the id of the base blob it was made
+ * against and a list of instructions that rebuild the new content from the
+ * base content: copies of byte ranges of the base, and inserts of new bytes.
+ * The base may itself be a Delta, up to MAX_DEPTH levels deep. Both
+ * contents are held in memory, so deltas are only made between blobs of
+ * at most Blob.IN_MEMORY_LIMIT bytes.
+ * @author Nicole Ni and Ina Nierotka
+ */
+public class Delta {
+    /** Longest chain of deltas allowed before a blob is stored in full. */
+    static final int MAX_DEPTH = 10;
+    /** Size of the blocks of the base that copies are matched on. */
+    private static final int BLOCK = 16;
+    /** Instruction tag for inserting literal bytes. */
+    private static final int INSERT = 0;
+    /** Instruction tag for copying a range of the base. */
+    private static final int COPY = 1;
+
+    /** Id of the blob this delta is made against. */
+    private String baseID;
+    /** Number of deltas between this one and a full blob, itself included. */
+    private int depth;
+    /** Encoded copy and insert instructions. */
+    private byte[] instructions;
+
+    /**
+     * Constructor method. Returns void.
+     * @param base is the id of the blob the delta is made against.
+     * @param chainDepth is the depth of this delta in its chain.
+     * @param encoded are the instructions returned by encode.
+     */
+    public Delta(String base, int chainDepth, byte[] encoded) {
+        this.baseID = base;
+        this.depth = chainDepth;
+        this.instructions = encoded;
+    }
+
+    /** Getter method for the base blob id, returns baseID. */
+    public String getBaseID() {
+        return baseID;
+    }
+
+    /** Getter method for the chain depth, returns depth. */
+    public int getDepth() {
+        return depth;
+    }
+
+    /** Getter method for the encoded instructions, returns instructions. */
+    public byte[] getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * Writes the base id, depth and instructions of this delta to OUT.
+     * Returns void.
+     * @param out is the stream of a stored blob.
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeUTF(baseID);
+        out.writeInt(depth);
+        out.writeInt(instructions.length);
+        out.write(instructions);
+    }
+
+    /**
+     * Returns the delta written by write to IN.
+     * @param in is the stream of a stored blob.
+     */
+    static Delta read(DataInputStream in) throws IOException {
+        String base = in.readUTF();
+        int chainDepth = in.readInt();
+        byte[] encoded = new byte[in.readInt()];
+        in.readFully(encoded);
+        return new Delta(base, chainDepth, encoded);
+    }
+
+    /**
+     * Returns instructions that rebuild TARGET from BASE. Every
+     * BLOCK-aligned block of the base is indexed by its hash, the target is
+     * scanned for those blocks, and each match is grown in both directions
+     * into the longest range the two have in common.
+     * @param base is the content of the previous version.
+     * @param target is the content of the new version.
+     */
+    static byte[] encode(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int literalStart = 0;
+        int i = 0;
+        while (i + BLOCK <= target.length) {
+            Integer match = blocks.get(hash(target, i));
+            if (match == null || !Arrays.equals(base, match, match + BLOCK,
+                    target, i, i + BLOCK)) {
+                i += 1;
+                continue;
+            }
+            int baseStart = match;
+            int start = i;
+            while (start > literalStart && baseStart > 0
+                    && base[baseStart - 1] == target[start - 1]) {
+                baseStart -= 1;
+                start -= 1;
+            }
+            int baseEnd = match + BLOCK;
+            int end = i + BLOCK;
+            while (baseEnd < base.length && end < target.length
+                    && base[baseEnd] == target[end]) {
+                baseEnd += 1;
+                end += 1;
+            }
+            writeInsert(out, target, literalStart, start);
+            out.write(COPY);
+            writeVarint(out, baseStart);
+            writeVarint(out, baseEnd - baseStart);
+            i = end;
+            literalStart = end;
+        }
+        writeInsert(out, target, literalStart, target.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the content rebuilt by applying INSTRUCTIONS to BASE.
+     * @param base is the content of the base blob.
+     * @param instructions are instructions returned by encode.
+     */
+    static byte[] apply(byte[] base, byte[] instructions) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] pos = {0};
+        while (pos[0] < instructions.length) {
+            int tag = instructions[pos[0]];
+            pos[0] += 1;
+            if (tag == COPY) {
+                int offset = readVarint(instructions, pos);
+                int length = readVarint(instructions, pos);
+                out.write(base, offset, length);
+            } else if (tag == INSERT) {
+                int length = readVarint(instructions, pos);
+                out.write(instructions, pos[0], length);
+                pos[0] += length;
+            } else {
+                throw Utils.error("Corrupt delta instruction %d.", tag);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /** Writes an insert of TARGET[START..END) to OUT, if it is not empty. */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target,
+                                    int start, int end) {
+        if (start < end) {
+            out.write(INSERT);
+            writeVarint(out, end - start);
+            out.write(target, start, end - start);
+        }
+    }
+
+    /** Writes the non-negative VALUE to OUT in 7-bit groups, low first. */
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while (value >= 0x80) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** Reads a value written by writeVarint from BYTES at POS[0], advancing
+     *  POS[0] past it. */
+    private static int readVarint(byte[] bytes, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = bytes[pos[0]] & 0xff;
+            pos[0] += 1;
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b >= 0x80);
+        return value;
+    }
+
+    /** Returns the hash of the BLOCK bytes of BYTES starting at START. */
+    private static int hash(byte[] bytes, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i += 1) {
+            h = h * 31 + bytes[i];
+        }
+        return h;
+    }
+}
@@ -0,0 +1,303 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Ignore class. Represents the rules of a .gitletignore file, which name
+ * the files that status does not list as untracked, and that add skips.
+ * Each line holds one glob pattern; blank lines and lines starting with #
+ * are skipped, and a backslash takes the character after it literally.
+ * In a pattern, * matches any characters but /, ? matches one character
+ * but /, [abc] and [a-z] match one character in the brackets, or not in
+ * them if they start with ! or ^, and ** matches any characters, / too,
+ * while a / after it may match nothing. A pattern ending in / matches
+ * only directories. A pattern with a / in it, other than at its end, is
+ * matched against the path from the working directory; any other pattern
+ * is matched against the name of a file or directory at any depth. A
+ * pattern starting with ! brings back a path an earlier pattern ignored,
+ * unless a directory above it is ignored. A path in an ignored directory
+ * is ignored.
+ * All the patterns are compiled once into a single nondeterministic
+ * automaton, which reads each path a character at a time, keeping the set
+ * of positions it may be at in every pattern. Checking a path takes one
+ * pass over it, however many patterns there are; the pass stops at the
+ * first directory above the path that is ignored, or as soon as no
+ * pattern can match any longer.
+ * @author Nicole Ni and Ina Nierotka
+ */
+class Ignore {
+
+    /** Kind of a position that matches one given character. */
+    private static final int CHAR = 0;
+    /** Kind of a position that matches one character but /. */
+    private static final int ANY = 1;
+    /** Kind of a position that matches one character of a class. */
+    private static final int CLASS = 2;
+    /** Kind of a position that matches any characters but /, or none. */
+    private static final int STAR = 3;
+    /** Kind of a position that matches any characters, or none. */
+    private static final int DOUBLE_STAR = 4;
+    /** Kind of a position that matches any number of whole directory
+     *  names, each followed by /, or none. */
+    private static final int DIRS = 5;
+    /** Kind of the position inside a directory name matched by DIRS,
+     *  which always comes right after it. */
+    private static final int DIRS_REST = 6;
+    /** Kind of the position at the end of a pattern, where it matches. */
+    private static final int END = 7;
+
+    /** The kind of each position. */
+    private final int[] kinds;
+    /** The character of each CHAR position, the class of each CLASS
+     *  position, or the pattern of each END position. */
+    private final int[] args;
+    /** The brackets of each character class, without the brackets. */
+    private final String[] classes;
+    /** Whether each pattern matches only directories. */
+    private final boolean[] dirOnly;
+    /** Whether each pattern starts with !. */
+    private final boolean[] negated;
+    /** The positions the automaton starts at. */
+    private final BitSet start;
+
+    /**
+     * Compiles the rules in IGNOREFILE. If it is missing, nothing is
+     * ignored.
+     * @param ignoreFile is the .gitletignore file.
+     */
+    Ignore(File ignoreFile) {
+        List<String> lines = new ArrayList<>();
+        if (ignoreFile.isFile()) {
+            try {
+                lines = Files.readAllLines(ignoreFile.toPath(),
+                        StandardCharsets.UTF_8);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+        }
+        List<int[]> positions = new ArrayList<>();
+        List<String> classList = new ArrayList<>();
+        List<Boolean> dirs = new ArrayList<>();
+        List<Boolean> nots = new ArrayList<>();
+        start = new BitSet();
+        for (String line : lines) {
+            String pattern = line.stripTrailing();
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                continue;
+            }
+            boolean not = pattern.startsWith("!");
+            if (not) {
+                pattern = pattern.substring(1);
+            }
+            boolean dir = pattern.endsWith("/") && !pattern.endsWith("\\/");
+            while (pattern.endsWith("/") && !pattern.endsWith("\\/")) {
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            start.set(positions.size());
+            if (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            } else if (pattern.indexOf('/') < 0) {
+                positions.add(new int[]{DIRS, 0});
+                positions.add(new int[]{DIRS_REST, 0});
+            }
+            compile(pattern, positions, classList);
+            positions.add(new int[]{END, dirs.size()});
+            dirs.add(dir);
+            nots.add(not);
+        }
+        kinds = new int[positions.size()];
+        args = new int[positions.size()];
+        for (int i = 0; i < kinds.length; i += 1) {
+            kinds[i] = positions.get(i)[0];
+            args[i] = positions.get(i)[1];
+        }
+        classes = classList.toArray(new String[0]);
+        dirOnly = new boolean[dirs.size()];
+        negated = new boolean[nots.size()];
+        for (int i = 0; i < dirOnly.length; i += 1) {
+            dirOnly[i] = dirs.get(i);
+            negated[i] = nots.get(i);
+        }
+        close(start);
+    }
+
+    /**
+     * Appends the positions of PATTERN to POSITIONS, each as its kind
+     * and argument, and the brackets of its classes to CLASSES.
+     * Returns void.
+     * @param pattern is the pattern, without !, or / at either end.
+     * @param positions are the positions of the patterns before it.
+     * @param classes are the classes of the patterns before it.
+     */
+    private static void compile(String pattern, List<int[]> positions,
+                                List<String> classes) {
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '\\' && i + 1 < pattern.length()) {
+                positions.add(new int[]{CHAR, pattern.charAt(i + 1)});
+                i += 2;
+            } else if (pattern.startsWith("**/", i)
+                    && (i == 0 || pattern.charAt(i - 1) == '/')) {
+                positions.add(new int[]{DIRS, 0});
+                positions.add(new int[]{DIRS_REST, 0});
+                i += 3;
+            } else if (pattern.startsWith("**", i)) {
+                positions.add(new int[]{DOUBLE_STAR, 0});
+                i += 2;
+            } else if (c == '*') {
+                positions.add(new int[]{STAR, 0});
+                i += 1;
+            } else if (c == '?') {
+                positions.add(new int[]{ANY, 0});
+                i += 1;
+            } else if (c == '[' && pattern.indexOf(']', i + 2) > 0) {
+                int end = pattern.indexOf(']', i + 2);
+                positions.add(new int[]{CLASS, classes.size()});
+                classes.add(pattern.substring(i + 1, end));
+                i = end + 1;
+            } else {
+                positions.add(new int[]{CHAR, c});
+                i += 1;
+            }
+        }
+    }
+
+    /**
+     * Returns true if the file or directory at PATH is ignored.
+     * @param path is the path, relative to the working directory, with
+     *             / between names.
+     * @param directory is true if PATH is a directory.
+     */
+    boolean ignored(String path, boolean directory) {
+        if (start.isEmpty()) {
+            return false;
+        }
+        BitSet current = (BitSet) start.clone();
+        BitSet next = new BitSet(kinds.length);
+        for (int i = 0; i < path.length(); i += 1) {
+            char c = path.charAt(i);
+            if (c == '/' && decide(current, true) > 0) {
+                return true;
+            }
+            step(current, c, next);
+            if (next.isEmpty()) {
+                return false;
+            }
+            BitSet swap = current;
+            current = next;
+            next = swap;
+        }
+        return decide(current, directory) > 0;
+    }
+
+    /**
+     * Sets NEXT to the positions reached from the positions in CURRENT by
+     * reading the character C. Returns void.
+     * @param current are the positions before C.
+     * @param c is the character read.
+     * @param next is set to the positions after C.
+     */
+    private void step(BitSet current, char c, BitSet next) {
+        next.clear();
+        for (int p = current.nextSetBit(0); p >= 0;
+             p = current.nextSetBit(p + 1)) {
+            switch (kinds[p]) {
+                case CHAR:
+                    if (args[p] == c) {
+                        next.set(p + 1);
+                    }
+                    break;
+                case ANY:
+                    if (c != '/') {
+                        next.set(p + 1);
+                    }
+                    break;
+                case CLASS:
+                    if (c != '/' && inClass(classes[args[p]], c)) {
+                        next.set(p + 1);
+                    }
+                    break;
+                case STAR:
+                    if (c != '/') {
+                        next.set(p);
+                    }
+                    break;
+                case DIRS_REST:
+                    next.set(c != '/' ? p : p - 1);
+                    break;
+                case DOUBLE_STAR:
+                    next.set(p);
+                    break;
+                case DIRS:
+                    if (c != '/') {
+                        next.set(p + 1);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        close(next);
+    }
+
+    /** Adds to POSITIONS every position that can be reached from one of
+     *  them without reading a character. Each such move is forward, so
+     *  one pass in order finds them all. */
+    private void close(BitSet positions) {
+        for (int p = positions.nextSetBit(0); p >= 0;
+             p = positions.nextSetBit(p + 1)) {
+            if (kinds[p] == STAR || kinds[p] == DOUBLE_STAR) {
+                positions.set(p + 1);
+            } else if (kinds[p] == DIRS) {
+                positions.set(p + 2);
+            }
+        }
+    }
+
+    /**
+     * Returns 1 if the last pattern that matches, among those ending at a
+     * position in POSITIONS, ignores the path, -1 if it brings the path
+     * back, and 0 if no pattern matches.
+     * @param positions are the positions after reading the path.
+     * @param directory is true if the path is a directory.
+     */
+    private int decide(BitSet positions, boolean directory) {
+        int last = -1;
+        for (int p = positions.nextSetBit(0); p >= 0;
+             p = positions.nextSetBit(p + 1)) {
+            if (kinds[p] == END && (directory || !dirOnly[args[p]])) {
+                last = Math.max(last, args[p]);
+            }
+        }
+        if (last < 0) {
+            return 0;
+        }
+        return negated[last] ? -1 : 1;
+    }
+
+    /** Returns true if C is in the class with the brackets SPEC, such as
+     *  a-z_ or !0-9. */
+    private static boolean inClass(String spec, char c) {
+        boolean not = spec.charAt(0) == '!' || spec.charAt(0) == '^';
+        boolean found = false;
+        for (int i = not ? 1 : 0; i < spec.length(); i += 1) {
+            if (i + 2 < spec.length() && spec.charAt(i + 1) == '-') {
+                found |= spec.charAt(i) <= c && c <= spec.charAt(i + 2);
+                i += 2;
+            } else {
+                found |= spec.charAt(i) == c;
+            }
+        }
+        return found != not;
+    }
+}
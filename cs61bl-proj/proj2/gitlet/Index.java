@@ -0,0 +1,295 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Index class. Represents the index file, which replaces the old staging
+ * directories. It holds one entry per file name: whether the file is staged
+ * for addition, staged for removal, or just tracked, the id of its blob, and
+ * the size, modification time and inode the working file had when that blob
+ * was known to match it. A working file whose stat data still matches its
+ * entry is known to hold that blob without reading it.
+ * @author Nicole Ni and Ina Nierotka
+ */
+class Index {
+
+    /** State of an entry that only caches the stat data of a file. */
+    static final int TRACKED = 0;
+    /** State of an entry staged for addition. */
+    static final int ADDED = 1;
+    /** State of an entry staged for removal. */
+    static final int REMOVED = 2;
+
+    /** Version number written in the header. */
+    private static final int VERSION = 1;
+    /** Magic string at the start of the file. */
+    private static final String MAGIC = "GIND";
+
+    /** One entry of the index. */
+    static class Entry {
+        /** ADDED, REMOVED or TRACKED. */
+        private int state;
+        /** Id of the blob of the file. */
+        private String blobID;
+        /** Size of the working file, or -1 if unknown. */
+        private long size;
+        /** Modification time of the working file, in nanoseconds. */
+        private long mtime;
+        /** Inode of the working file, or 0 if the system has none. */
+        private long inode;
+
+        /** Getter method for the state, returns state. */
+        int getState() {
+            return state;
+        }
+
+        /** Getter method for the blob id, returns blobID. */
+        String getBlobID() {
+            return blobID;
+        }
+    }
+
+    /** The index file. */
+    private final File file;
+    /** Modification time of the index file when it was loaded. Entries
+     *  whose file changed at or after it may have changed again within
+     *  the same clock tick, so their stat data is not trusted. */
+    private final long loadedAt;
+    /** The entries, by file name. */
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+    /** True if the entries changed since the index was loaded or saved. */
+    private boolean dirty;
+
+    /**
+     * Loads the index in FILE, or an empty index if FILE does not exist.
+     * @param indexFile is the index file.
+     */
+    Index(File indexFile) {
+        file = indexFile;
+        if (!file.isFile()) {
+            loadedAt = Long.MAX_VALUE;
+            return;
+        }
+        loadedAt = file.lastModified() * 1000000L;
+        ByteBuffer buf = ByteBuffer.wrap(Utils.readContents(file));
+        byte[] magic = new byte[MAGIC.length()];
+        buf.get(magic);
+        if (!MAGIC.equals(new String(magic, StandardCharsets.US_ASCII))
+                || buf.getInt() != VERSION) {
+            throw Utils.error("Corrupt index file.");
+        }
+        int count = buf.getInt();
+        byte[] id = new byte[Utils.UID_LENGTH / 2];
+        for (int i = 0; i < count; i += 1) {
+            Entry e = new Entry();
+            e.state = buf.get();
+            byte[] name = new byte[buf.getShort() & 0xffff];
+            buf.get(name);
+            buf.get(id);
+            e.blobID = Pack.toHex(id);
+            e.size = buf.getLong();
+            e.mtime = buf.getLong();
+            e.inode = buf.getLong();
+            entries.put(new String(name, StandardCharsets.UTF_8), e);
+        }
+    }
+
+    /** Writes the index back to its file if it changed. Returns void. */
+    void save() {
+        if (!dirty) {
+            return;
+        }
+        File tmp = Utils.tempFileFor(file);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp.toPath())))) {
+            out.write(MAGIC.getBytes(StandardCharsets.US_ASCII));
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> item : entries.entrySet()) {
+                Entry e = item.getValue();
+                byte[] name = item.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeByte(e.state);
+                out.writeShort(name.length);
+                out.write(name);
+                out.write(Pack.toBytes(e.blobID));
+                out.writeLong(e.size);
+                out.writeLong(e.mtime);
+                out.writeLong(e.inode);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        Utils.replace(tmp, file);
+        dirty = false;
+    }
+
+    /** Returns the entry of the given file name, or null.
+     * @param name is the name of the file. */
+    Entry get(String name) {
+        return entries.get(name);
+    }
+
+    /** Returns the names of all entries in the given state, sorted.
+     * @param state is ADDED, REMOVED or TRACKED. */
+    List<String> names(int state) {
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String, Entry> item : entries.entrySet()) {
+            if (item.getValue().state == state) {
+                result.add(item.getKey());
+            }
+        }
+        return result;
+    }
+
+    /** Returns true if any file is staged for addition or removal. */
+    boolean hasStaged() {
+        for (Entry e : entries.values()) {
+            if (e.state != TRACKED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records that the working file WORKING named NAME holds the blob
+     * BLOBID, in the given state, along with its current stat data.
+     * WORKING may be missing, as for files staged for removal.
+     * Returns void.
+     * @param name is the name of the file.
+     * @param blobID is the id of the blob.
+     * @param state is ADDED, REMOVED or TRACKED.
+     * @param working is the file in the working directory.
+     */
+    void put(String name, String blobID, int state, File working) {
+        Entry e = new Entry();
+        e.state = state;
+        e.blobID = blobID;
+        e.size = -1;
+        long[] stat = stat(working);
+        if (stat != null) {
+            e.size = stat[0];
+            e.mtime = stat[1];
+            e.inode = stat[2];
+        }
+        entries.put(name, e);
+        dirty = true;
+    }
+
+    /**
+     * Copies into this index the entries of FROM that only cache the stat
+     * data of a file, for each name in NAMES whose entry here is missing
+     * or also only caches stat data. Used to save what a command learned
+     * from an index loaded earlier, which another command may have saved
+     * over since, without undoing what that command staged. Returns void.
+     * @param from is the index the entries are taken from.
+     * @param names are the names of the entries to copy.
+     */
+    void copyTracked(Index from, Collection<String> names) {
+        for (String name : names) {
+            Entry e = from.entries.get(name);
+            Entry here = entries.get(name);
+            if (e != null && e.state == TRACKED && e.size >= 0
+                    && (here == null || here.state == TRACKED)) {
+                entries.put(name, e);
+                dirty = true;
+            }
+        }
+    }
+
+    /** Removes the entry of the given file name, if any. Returns void.
+     * @param name is the name of the file. */
+    void remove(String name) {
+        if (entries.remove(name) != null) {
+            dirty = true;
+        }
+    }
+
+    /** Drops every entry in the given state. Returns void.
+     * @param state is ADDED, REMOVED or TRACKED. */
+    void removeAll(int state) {
+        for (Iterator<Entry> i = entries.values().iterator(); i.hasNext();) {
+            if (i.next().state == state) {
+                i.remove();
+                dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Called after a commit of the staged entries. Files staged for
+     * addition become merely tracked, keeping their stat data, and files
+     * staged for removal are dropped. Returns void.
+     */
+    void committed() {
+        removeAll(REMOVED);
+        for (Entry e : entries.values()) {
+            if (e.state == ADDED) {
+                e.state = TRACKED;
+                dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Returns true if the working file WORKING named NAME is known to hold
+     * the blob BLOBID because its stat data still matches what the entry
+     * recorded, so that it does not have to be read and hashed.
+     * @param name is the name of the file.
+     * @param blobID is the id of the blob it should hold.
+     * @param working is the file in the working directory.
+     */
+    boolean unchanged(String name, String blobID, File working) {
+        Entry e = entries.get(name);
+        if (e == null || e.size < 0 || !e.blobID.equals(blobID)
+                || e.mtime >= loadedAt) {
+            return false;
+        }
+        long[] stat = stat(working);
+        return stat != null && stat[0] == e.size && stat[1] == e.mtime
+                && stat[2] == e.inode;
+    }
+
+    /** Returns the size, modification time in nanoseconds and inode of
+     *  WORKING, or null if it is not a plain file. */
+    private static long[] stat(File working) {
+        Path path = working.toPath();
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path,
+                    BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (!attrs.isRegularFile()) {
+                return null;
+            }
+            FileTime mtime = attrs.lastModifiedTime();
+            long inode = 0;
+            try {
+                inode = ((Number) Files.getAttribute(path, "unix:ino",
+                        LinkOption.NOFOLLOW_LINKS)).longValue();
+            } catch (UnsupportedOperationException | IllegalArgumentException
+                     | IOException excp) {
+                inode = 0;
+            }
+            return new long[] {attrs.size(),
+                mtime.to(TimeUnit.NANOSECONDS), inode};
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package gitlet;
+
+import java.util.Date;
+
+/**
+ * LogEntry class. Represents one entry of log or global-log: the id,
+ * date and message of a commit.
+ * @author Nicole Ni and Ina Nierotka
+ */
+public class LogEntry {
+
+    /** The id of the commit. */
+    private final String commitID;
+    /** The date of the commit. */
+    private final Date timeStamp;
+    /** The message of the commit. */
+    private final String message;
+
+    /**
+     * Constructor of a log entry.
+     * @param commitID is the id of the commit.
+     * @param timeStamp is the date of the commit.
+     * @param message is the message of the commit.
+     */
+    LogEntry(String commitID, Date timeStamp, String message) {
+        this.commitID = commitID;
+        this.timeStamp = timeStamp;
+        this.message = message;
+    }
+
+    /** Getter method for the commit id, returns commitID. */
+    public String getCommitID() {
+        return commitID;
+    }
+
+    /** Getter method for the date of the commit, returns timeStamp. */
+    public Date getTimeStamp() {
+        return timeStamp;
+    }
+
+    /** Getter method for the message of the commit, returns message. */
+    public String getMessage() {
+        return message;
+    }
+}
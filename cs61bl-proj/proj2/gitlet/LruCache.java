@@ -0,0 +1,79 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.Function;
+
+/**
+ * LruCache class. A size-bounded map from object ids to decoded objects,
+ * which drops the least recently used entry once it is full. Only
+ * objects that never change once stored, like commits and trees, may be
+ * cached, and callers must not modify what they get back. Counts how
+ * many lookups were answered from the cache and how many had to load.
+ * Threads may share a cache: every method holds the cache's monitor,
+ * except while a value loads, so a slow load does not hold up lookups of
+ * other keys. Two threads that miss the same key at once both load it.
+ * @author Nicole Ni and Ina Nierotka
+ */
+public class LruCache<K, V> {
+    /** The cached entries, least recently used first. */
+    private final LinkedHashMap<K, V> entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+    /** Most entries kept at once. */
+    private final int capacity;
+    /** Number of lookups answered from the cache. */
+    private long hits;
+    /** Number of lookups that had to load their value. */
+    private long misses;
+
+    /**
+     * Creates an empty cache. Returns void.
+     * @param maxEntries is the most entries kept at once.
+     */
+    public LruCache(int maxEntries) {
+        capacity = maxEntries;
+    }
+
+    /**
+     * Returns the value cached for KEY. If there is none, it is loaded
+     * with LOAD and cached, dropping the least recently used entry if
+     * the cache is full.
+     * @param key is the id of the object.
+     * @param load returns the object with the given id.
+     */
+    public V get(K key, Function<K, V> load) {
+        synchronized (this) {
+            V value = entries.get(key);
+            if (value != null) {
+                hits += 1;
+                return value;
+            }
+            misses += 1;
+        }
+        V value = load.apply(key);
+        synchronized (this) {
+            entries.put(key, value);
+            if (entries.size() > capacity) {
+                Iterator<K> eldest = entries.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return value;
+    }
+
+    /** Returns the number of entries cached. */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** Getter method for the number of hits, returns hits. */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /** Getter method for the number of misses, returns misses. */
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -1,72 +1,151 @@
 package gitlet;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
 
 /** Driver class for Gitlet, a subset of the Git version-control system.
+ *  Main is the command line over Repository: it reads the arguments,
+ *  calls the matching method of a Repository rooted at the current
+ *  directory, and prints what it returns or the message of the error it
+ *  throws.
  *  @author Nicole Ni and Ina Nierotka
  */
 public class Main {
+    /** Log entries printed at a time, after which log stops if standard
+     *  output was closed. */
+    private static final int LOG_BATCH = 64;
+
     /**
      * Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND1> <OPERAND2> etc.
+     *  <COMMAND> <OPERAND1> <OPERAND2> etc. If a daemon is serving the
+     *  repository, the command is run there instead, with the same output
+     *  and exit status.
      */
     public static void main(String[] args) {
         if (args.length == 0) {
             System.out.println("Please enter a command.");
             return;
         }
+        Repository repo = new Repository(
+                new File(System.getProperty("user.dir")));
+        int status = -1;
+        if (!args[0].equals("batch")) {
+            status = Daemon.forward(repo, args);
+        }
+        if (status < 0) {
+            status = run(args, repo);
+        }
+        if (status > 0) {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * Runs the command in ARGS, which must not be empty, on REPO. Prints
+     * the message of a GitletException it throws, as for any other failure
+     * case of a command, and the stack trace of any other exception to
+     * System.err. Returns its exit status, which is 1 if it threw an
+     * exception other than a GitletException.
+     * @param args is the command line.
+     * @param repo is the repository to run it on.
+     */
+    static int run(String[] args, Repository repo) {
+        try {
+            return execute(args, repo);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            return 0;
+        } catch (RuntimeException excp) {
+            System.out.flush();
+            excp.printStackTrace();
+            return 1;
+        }
+    }
+
+    /**
+     * Runs the command in ARGS, which must not be empty, on REPO.
+     * Returns its exit status: 0, unless it was a batch in which a
+     * command failed.
+     * @param args is the command line.
+     * @param repo is the repository to run it on.
+     */
+    static int execute(String[] args, Repository repo) {
         if (wrongNumOfCommands(args)) {
             System.out.println("Incorrect operands.");
-            return;
+            return 0;
         }
-        if (needRepo(args[0])) {
+        if (needRepo(args[0], repo)) {
             System.out.println("Not in an initialized Gitlet directory.");
-            return;
+            return 0;
         }
         switch (args[0]) {
             default:
                 System.out.println("No command with that name exists.");
                 break;
             case "init":
-                Repository.init();
+                repo.init();
                 break;
             case "add":
-                Repository.add(args[1]);
+                repo.add(args[1]);
                 break;
             case "commit":
-                Repository.commit(args[1], null);
+                repo.commit(args[1], null);
                 break;
             case "checkout":
-                checkoutHelper(args);
+                checkoutHelper(repo, args);
                 break;
             case "log":
-                Repository.log();
+                logHelper(repo, args);
                 break;
             case "global-log":
-                Repository.globalLog();
+                printLog(repo.globalLog());
                 break;
             case "branch":
-                Repository.branch(args[1]);
+                repo.branch(args[1]);
                 break;
             case "rm-branch":
-                Repository.rmBranch(args[1]);
+                repo.rmBranch(args[1]);
                 break;
             case "find":
-                Repository.find(args[1]);
+                findHelper(repo, args);
                 break;
             case "rm":
-                Repository.remove(args[1]);
+                repo.remove(args[1]);
                 break;
             case "status":
-                Repository.status();
+                printStatus(repo.status());
                 break;
             case "reset":
-                Repository.reset(args[1]);
+                repo.reset(args[1]);
                 break;
             case "merge":
-                Repository.merge(args[1]);
+                mergeHelper(repo, args[1]);
+                break;
+            case "repack":
+                repo.repack();
                 break;
+            case "daemon":
+                daemonHelper(repo, args);
+                break;
+            case "batch":
+                return batchHelper(repo, args);
         }
+        return 0;
     }
 
     /**Heper method that deals with call the failure cases,
@@ -90,9 +169,9 @@ public class Main {
     private static ArrayList<String> oneArgCreator() {
         ArrayList<String> oneArg = new ArrayList<>();
         oneArg.add("init");
-        oneArg.add("log");
         oneArg.add("global-log");
         oneArg.add("status");
+        oneArg.add("repack");
         return oneArg;
     }
 
@@ -101,7 +180,6 @@ public class Main {
         ArrayList<String> twoArgs = new ArrayList<>();
         twoArgs.add("add");
         twoArgs.add("rm");
-        twoArgs.add("find");
         twoArgs.add("branch");
         twoArgs.add("rm-branch");
         twoArgs.add("reset");
@@ -112,10 +190,11 @@ public class Main {
     /**Helper method that deal with the error when need to initialize
      * a repo first.
      * @param firstArg is the first word of the command lines.
+     * @param repo is the repository the command is run on.
      * @return boolean indicating if the command call
      * need to call init first.
      */
-    private static boolean needRepo(String firstArg) {
+    private static boolean needRepo(String firstArg, Repository repo) {
         ArrayList<String> needsGitletRepo = new ArrayList<>();
         needsGitletRepo.add("add");
         needsGitletRepo.add("commit");
@@ -129,8 +208,10 @@ public class Main {
         needsGitletRepo.add("rm-branch");
         needsGitletRepo.add("reset");
         needsGitletRepo.add("merge");
+        needsGitletRepo.add("repack");
+        needsGitletRepo.add("daemon");
         if (needsGitletRepo.contains(firstArg)) {
-            if (!Repository.checkGitlet()) {
+            if (!repo.checkGitlet()) {
                 return true;
             }
         }
@@ -138,24 +219,231 @@ public class Main {
     }
 
     /**Helper method that checks the failure cases with git checkout.
+     * @param repo is the repository to check out in.
      * @param args is the command line that is passed in.
      */
-    private static void checkoutHelper(String[] args) {
+    private static void checkoutHelper(Repository repo, String[] args) {
         if (args.length == 3) {
             if (args[1].equals("--")) {
-                Repository.checkoutFile(args[2]);
+                repo.checkoutFile(args[2]);
             } else {
                 System.out.println("Incorrect operands.");
             }
         } else if (args.length == 4) {
             if (args[2].equals("--")) {
-                Repository.checkoutFileFromCommit(args[1], args[3]);
+                repo.checkoutFileFromCommit(args[1], args[3]);
             } else {
                 System.out.println("Incorrect operands.");
             }
         } else {
-            Repository.checkoutBranch(args[1]);
+            repo.checkoutBranch(args[1]);
+        }
+    }
+
+    /**Helper method that deals with git daemon, which serves commands
+     * until it is sent git daemon --stop. That is only run here, in the
+     * daemon itself, if no daemon is running.
+     * @param repo is the repository to serve.
+     * @param args is the command line that is passed in.
+     */
+    private static void daemonHelper(Repository repo, String[] args) {
+        if (args.length == 1) {
+            Daemon.serve(repo);
+        } else if (args.length == 2 && args[1].equals("--stop")) {
+            System.out.println("No daemon is running.");
+        } else {
+            System.out.println("Incorrect operands.");
+        }
+    }
+
+    /**Helper method that deals with git batch, which runs the commands
+     * in the given file, or in standard input if there is none.
+     * @param repo is the repository whose caches are shared.
+     * @param args is the command line that is passed in.
+     * @return 1 if any command failed, otherwise 0.
+     */
+    private static int batchHelper(Repository repo, String[] args) {
+        if (args.length > 2) {
+            System.out.println("Incorrect operands.");
+            return 0;
+        } else if (args.length == 1) {
+            return Batch.run(new BufferedReader(new InputStreamReader(
+                    System.in, StandardCharsets.UTF_8)), repo);
+        }
+        try (BufferedReader in = Files.newBufferedReader(Path.of(args[1]))) {
+            return Batch.run(in, repo);
+        } catch (NoSuchFileException excp) {
+            System.out.println("File does not exist.");
+            return 1;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /**Helper method that deals with the options of git find:
+     * find MESSAGE, find --word WORDS and find --regex PATTERN.
+     * @param repo is the repository to search.
+     * @param args is the command line that is passed in.
+     */
+    private static void findHelper(Repository repo, String[] args) {
+        List<String> found;
+        if (args.length == 2) {
+            found = repo.find(args[1]);
+        } else if (args.length == 3 && args[1].equals("--word")) {
+            found = repo.findWords(args[2]);
+        } else if (args.length == 3 && args[1].equals("--regex")) {
+            found = repo.findRegex(args[2]);
+        } else {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        for (String commitID : found) {
+            System.out.println(commitID);
+        }
+        if (found.isEmpty()) {
+            System.out.println("Found no commit with that message.");
+        }
+    }
+
+    /**Helper method that prints the outcome of git merge.
+     * @param repo is the repository to merge in.
+     * @param otherBranch is the branch to merge into the current one.
+     */
+    private static void mergeHelper(Repository repo, String otherBranch) {
+        int result = repo.merge(otherBranch);
+        if (result == Repository.ALREADY_MERGED) {
+            System.out.println("Given branch is an "
+                    + "ancestor of the current branch.");
+        } else if (result == Repository.FAST_FORWARDED) {
+            System.out.println("Current branch fast-forwarded.");
+        } else if (result == Repository.MERGE_CONFLICT) {
+            System.out.println("Encountered a merge conflict.");
+        }
+    }
+
+    /**Helper method that prints log entries as they are read, LOG_BATCH
+     * at a time, stopping early if standard output is closed, as when
+     * piped into head. System.out never throws, so it is checked for an
+     * error after each batch is flushed.
+     * @param entries are the entries to print.
+     */
+    private static void printLog(Iterator<LogEntry> entries) {
+        DateTimeFormatter dateFormat = Commit.dateFormatter();
+        String newline = System.lineSeparator();
+        StringBuilder out = new StringBuilder();
+        int count = 0;
+        while (entries.hasNext()) {
+            LogEntry entry = entries.next();
+            out.append("===").append(newline);
+            out.append("commit ").append(entry.getCommitID())
+                    .append(newline);
+            out.append("Date: ").append(dateFormat.format(
+                    entry.getTimeStamp().toInstant())).append(newline);
+            out.append(entry.getMessage()).append(newline).append(newline);
+            count += 1;
+            if (count % LOG_BATCH == 0) {
+                System.out.print(out);
+                out.setLength(0);
+                if (System.out.checkError()) {
+                    return;
+                }
+            }
+        }
+        System.out.print(out);
+        System.out.flush();
+    }
+
+    /**Helper method that prints the status of a repository.
+     * @param status is the status to print.
+     */
+    private static void printStatus(Status status) {
+        System.out.println("=== Branches ===");
+        System.out.println("*" + status.getCurrentBranch());
+        for (String name : status.getOtherBranches()) {
+            System.out.println(name);
+        }
+        System.out.println();
+        System.out.println("=== Staged Files ===");
+        for (String name : status.getStaged()) {
+            System.out.println(name);
+        }
+        System.out.println();
+        System.out.println("=== Removed Files ===");
+        for (String name : status.getRemoved()) {
+            System.out.println(name);
+        }
+        System.out.println();
+        System.out.println("=== Modifications Not Staged For Commit ===");
+        for (String name : status.getModified()) {
+            System.out.println(name + " (modified)");
+        }
+        for (String name : status.getDeleted()) {
+            System.out.println(name + " (deleted)");
+        }
+        System.out.println();
+        System.out.println("=== Untracked Files ===");
+        for (String name : status.getUntracked()) {
+            System.out.println(name);
+        }
+        System.out.println();
+    }
+
+    /**Helper method that reads the options of git log, which are
+     * -n N or --max-count=N to print at most N commits, and
+     * --since DATE to stop at the first commit older than DATE, given
+     * as yyyy-MM-dd or yyyy-MM-ddTHH:mm:ss in local time.
+     * @param repo is the repository to print the log of.
+     * @param args is the command line that is passed in.
+     */
+    private static void logHelper(Repository repo, String[] args) {
+        int maxCount = -1;
+        Date since = null;
+        try {
+            for (int i = 1; i < args.length; i += 1) {
+                String option = args[i];
+                String value = null;
+                int equals = option.indexOf('=');
+                if (option.startsWith("--") && equals >= 0) {
+                    value = option.substring(equals + 1);
+                    option = option.substring(0, equals);
+                } else if (i + 1 < args.length) {
+                    value = args[i + 1];
+                    i += 1;
+                }
+                if (value == null) {
+                    System.out.println("Incorrect operands.");
+                    return;
+                } else if (option.equals("-n")
+                        || option.equals("--max-count")) {
+                    maxCount = Integer.parseInt(value);
+                    if (maxCount < 0) {
+                        System.out.println("Incorrect operands.");
+                        return;
+                    }
+                } else if (option.equals("--since")) {
+                    since = parseDate(value);
+                } else {
+                    System.out.println("Incorrect operands.");
+                    return;
+                }
+            }
+        } catch (NumberFormatException | DateTimeParseException excp) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        printLog(repo.log(maxCount, since));
+    }
+
+    /** Returns the date in local time written as yyyy-MM-dd or
+     *  yyyy-MM-ddTHH:mm:ss in VALUE. */
+    private static Date parseDate(String value) {
+        LocalDateTime time;
+        if (value.contains("T")) {
+            time = LocalDateTime.parse(value);
+        } else {
+            time = LocalDate.parse(value).atStartOfDay();
         }
+        return Date.from(time.atZone(ZoneId.systemDefault()).toInstant());
     }
 
 }
@@ -0,0 +1,535 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * MessageIndex class. Represents the message-index, an inverted index of
+ * commit messages used by find --word and find --regex. It maps every word
+ * of every message, and every three-character run of every message, to the
+ * sorted rows of the commit-meta file whose messages hold it. Words are runs
+ * of letters and digits; both words and runs are taken from the message in
+ * lower case. The index is a directory of segment files, each covering a
+ * range of rows, named by its first row and the row after its last; the
+ * segments from row 0 on, one after another, cover the first covered()
+ * rows of the commit-meta file. Rows made since are few and are searched
+ * directly, until a new segment is written for them. A new segment is then
+ * merged with the one before it, and so on, for as long as it is at least
+ * as large, so that there are only a few segments and each row is indexed
+ * again only a few times as the history grows.
+ * @author Nicole Ni and Ina Nierotka
+ */
+class MessageIndex {
+
+    /** Version number written in the header. */
+    private static final int VERSION = 2;
+    /** Magic string at the start of each segment file. */
+    private static final String MAGIC = "GMIX";
+    /** Bytes in the header: magic string, version, first row, the row
+     *  after the last, and the positions of the two tables. */
+    private static final int HEADER_SIZE = 24;
+    /** Bytes in one directory entry of a table: the position and length
+     *  of the key, and the position and count of its rows. */
+    private static final int ENTRY_SIZE = 16;
+    /** Length of the runs of characters in the trigram table. */
+    private static final int GRAM = 3;
+
+    /** The segments, in order of their rows. */
+    private final List<ByteBuffer> segments = new ArrayList<>();
+
+    /** Constructor of an empty index, which covers no rows. */
+    MessageIndex() {
+    }
+
+    /**
+     * Maps the segments in DIR that cover the rows from row 0 on, or an
+     * empty index if DIR does not exist. Segments left over from a merge
+     * that did not finish are passed over.
+     * @param dir is the message-index directory.
+     */
+    MessageIndex(File dir) {
+        for (File file : chain(dir)) {
+            ByteBuffer buf;
+            try (FileChannel channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.READ)) {
+                buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                        channel.size());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+            byte[] magic = new byte[MAGIC.length()];
+            if (buf.limit() < HEADER_SIZE) {
+                throw Utils.error("Corrupt message-index file.");
+            }
+            buf.get(0, magic);
+            if (!MAGIC.equals(new String(magic, StandardCharsets.US_ASCII))
+                    || buf.getInt(4) != VERSION) {
+                throw Utils.error("Corrupt message-index file.");
+            }
+            segments.add(buf);
+        }
+    }
+
+    /** Returns the number of commit-meta rows the index covers. */
+    int covered() {
+        return segments.isEmpty() ? 0
+                : segments.get(segments.size() - 1).getInt(12);
+    }
+
+    /**
+     * Returns the sorted covered rows whose messages hold every one of
+     * WORDS, which must be normalized as by words().
+     * @param words are the words to look up.
+     */
+    int[] rowsWithWords(List<String> words) {
+        return rowsWithAll(16, words);
+    }
+
+    /**
+     * Returns the sorted covered rows whose messages hold every one of
+     * GRAMS, which must be normalized as by trigrams().
+     * @param grams are the three-character runs to look up.
+     */
+    int[] rowsWithTrigrams(Set<String> grams) {
+        return rowsWithAll(20, grams);
+    }
+
+    /**
+     * Brings the index in DIR up to date with META. If it covers rows
+     * META does not have, it is removed first. Then, if at least LAG rows
+     * are not covered, a segment is written for them, and merged with the
+     * segments before it for as long as it is at least as large as the
+     * one before it. Segments left over from a merge that did not finish
+     * are removed. Returns void.
+     * @param dir is the message-index directory.
+     * @param meta is the commit-meta file to index.
+     * @param lag is the fewest rows a new segment is written for.
+     */
+    static void update(File dir, CommitMeta meta, int lag) {
+        if (dir.isFile()) {
+            dir.delete();
+        }
+        dir.mkdir();
+        List<File> chain = chain(dir);
+        int covered = chain.isEmpty() ? 0 : end(chain.get(chain.size() - 1));
+        if (covered > meta.size()) {
+            chain.clear();
+            covered = 0;
+        }
+        for (String name : Utils.plainFilenamesIn(dir)) {
+            if (!chain.contains(Utils.join(dir, name))) {
+                Utils.join(dir, name).delete();
+            }
+        }
+        if (meta.size() - covered < lag) {
+            return;
+        }
+        int from = covered;
+        List<File> merged = new ArrayList<>();
+        while (!chain.isEmpty()) {
+            File last = chain.get(chain.size() - 1);
+            if (end(last) - start(last) > meta.size() - from) {
+                break;
+            }
+            from = start(last);
+            merged.add(chain.remove(chain.size() - 1));
+        }
+        writeSegment(dir, meta, from, meta.size());
+        for (File file : merged) {
+            file.delete();
+        }
+    }
+
+    /** Removes the index in DIR, with every segment in it. Returns void.
+     * @param dir is the message-index directory. */
+    static void delete(File dir) {
+        List<String> names = Utils.plainFilenamesIn(dir);
+        if (names != null) {
+            for (String name : names) {
+                Utils.join(dir, name).delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * Writes a segment of the rows of META from FROM up to TO to DIR,
+     * through a temporary file moved into place. Returns void.
+     * @param dir is the message-index directory.
+     * @param meta is the commit-meta file to index.
+     * @param from is the first row of the segment.
+     * @param to is the row after its last.
+     */
+    private static void writeSegment(File dir, CommitMeta meta, int from,
+                                     int to) {
+        TreeMap<String, List<Integer>> words = new TreeMap<>();
+        TreeMap<String, List<Integer>> grams = new TreeMap<>();
+        for (int row = from; row < to; row += 1) {
+            String message = meta.message(row);
+            for (String word : new LinkedHashSet<>(words(message))) {
+                words.computeIfAbsent(word, k -> new ArrayList<>()).add(row);
+            }
+            for (String gram : trigrams(normalize(message))) {
+                grams.computeIfAbsent(gram, k -> new ArrayList<>()).add(row);
+            }
+        }
+        byte[] wordTable = table(words);
+        byte[] gramTable = table(grams);
+        File segment = Utils.join(dir, from + "-" + to);
+        File tmp = Utils.tempFileFor(segment);
+        try (DataOutputStream out = new DataOutputStream(
+                Files.newOutputStream(tmp.toPath()))) {
+            out.write(MAGIC.getBytes(StandardCharsets.US_ASCII));
+            out.writeInt(VERSION);
+            out.writeInt(from);
+            out.writeInt(to);
+            out.writeInt(HEADER_SIZE);
+            out.writeInt(HEADER_SIZE + wordTable.length);
+            out.write(wordTable);
+            out.write(gramTable);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        Utils.replace(tmp, segment);
+    }
+
+    /** Returns the segments in DIR that cover the rows from row 0 on, one
+     *  after another, taking the largest segment at each row. */
+    private static List<File> chain(File dir) {
+        List<File> result = new ArrayList<>();
+        List<String> names = Utils.plainFilenamesIn(dir);
+        if (names == null) {
+            return result;
+        }
+        TreeMap<Integer, File> longest = new TreeMap<>();
+        for (String name : names) {
+            File file = Utils.join(dir, name);
+            if (start(file) >= 0 && (!longest.containsKey(start(file))
+                    || end(longest.get(start(file))) < end(file))) {
+                longest.put(start(file), file);
+            }
+        }
+        int row = 0;
+        while (longest.containsKey(row)) {
+            File file = longest.get(row);
+            result.add(file);
+            row = end(file);
+        }
+        return result;
+    }
+
+    /** Returns the first row of the segment FILE, named FROM-TO, or -1 if
+     *  it is not named as a segment. */
+    private static int start(File file) {
+        String[] rows = file.getName().split("-", -1);
+        if (rows.length != 2 || !rows[0].matches("[0-9]+")
+                || !rows[1].matches("[0-9]+")) {
+            return -1;
+        }
+        return Integer.parseInt(rows[0]);
+    }
+
+    /** Returns the row after the last of the segment FILE, named FROM-TO.
+     *  FILE must be named as a segment. */
+    private static int end(File file) {
+        return Integer.parseInt(file.getName().split("-", -1)[1]);
+    }
+
+    /** Returns TEXT in lower case, one character at a time, so that
+     *  positions in the result match positions in TEXT.
+     * @param text is a commit message or part of one. */
+    static String normalize(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i += 1) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    /** Returns the words of TEXT in order, normalized: its runs of letters
+     *  and digits, in lower case.
+     * @param text is a commit message or a query. */
+    static List<String> words(String text) {
+        List<String> result = new ArrayList<>();
+        String lower = normalize(text);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i += 1) {
+            boolean inWord = i < lower.length()
+                    && Character.isLetterOrDigit(lower.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                result.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return result;
+    }
+
+    /** Returns every distinct three-character run of TEXT.
+     * @param text is normalized text. */
+    static Set<String> trigrams(String text) {
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i += 1) {
+            result.add(text.substring(i, i + GRAM));
+        }
+        return result;
+    }
+
+    /**
+     * Returns runs of literal text that every match of the regular
+     * expression REGEX must contain, or an empty list if it could not
+     * tell. Only the simple parts of the syntax are understood: anything
+     * with alternation, inline flags or quoting gives no runs, and
+     * groups, classes, escapes other than of punctuation, with whatever
+     * they take after their letter, and optional or repeated characters
+     * end a run.
+     * @param regex is a regular expression, as taken by Pattern.
+     */
+    static List<String> requiredLiterals(String regex) {
+        List<String> result = new ArrayList<>();
+        if (regex.contains("|") || regex.contains("(?")
+                || regex.contains("\\Q")) {
+            return result;
+        }
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            i += 1;
+            if (c == '\\' && i < regex.length()
+                    && !Character.isLetterOrDigit(regex.charAt(i))) {
+                c = regex.charAt(i);
+                i += 1;
+            } else if (c == '\\') {
+                i = escapeEnd(regex, i);
+                addRun(result, run);
+                continue;
+            } else if (c == '?' || c == '*' || c == '{') {
+                if (run.length() > 0) {
+                    run.setLength(run.length() - 1);
+                }
+                if (c == '{') {
+                    i = Math.max(i, regex.indexOf('}', i) + 1);
+                }
+                addRun(result, run);
+                continue;
+            } else if (c == '[') {
+                i = classEnd(regex, i);
+                addRun(result, run);
+                continue;
+            } else if (c == '(' || c == ')') {
+                depth = Math.max(0, depth + (c == '(' ? 1 : -1));
+                addRun(result, run);
+                continue;
+            } else if (c == '+' || c == '.' || c == '^' || c == '$') {
+                addRun(result, run);
+                continue;
+            }
+            if (depth == 0) {
+                run.append(c);
+            }
+        }
+        addRun(result, run);
+        return result;
+    }
+
+    /** Returns the position just after the ']' that closes the character
+     *  class of REGEX whose contents start at START. */
+    private static int classEnd(String regex, int start) {
+        int i = start;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i += 1;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i += 1;
+        }
+        while (i < regex.length() && regex.charAt(i) != ']') {
+            i += regex.charAt(i) == '\\' ? 2 : 1;
+        }
+        return i + 1;
+    }
+
+    /** Returns the position just after the escape of REGEX whose letter
+     *  or digit, after the backslash, is at START, or START if there is
+     *  none. Escapes x and u take hex digits, 0 octal digits, c, p and P
+     *  one letter, and a back reference its digits; any escape may take a
+     *  following {...}, and k a following <...>. */
+    private static int escapeEnd(String regex, int start) {
+        if (start >= regex.length()) {
+            return start;
+        }
+        char kind = regex.charAt(start);
+        int i = start + 1;
+        if (i < regex.length() && (regex.charAt(i) == '{'
+                || kind == 'k' && regex.charAt(i) == '<')) {
+            int close = regex.indexOf(regex.charAt(i) == '{' ? '}' : '>', i);
+            return close < 0 ? regex.length() : close + 1;
+        }
+        int digits = 0;
+        String allowed = "";
+        if (kind == 'x') {
+            digits = 2;
+            allowed = "0123456789abcdefABCDEF";
+        } else if (kind == 'u') {
+            digits = 4;
+            allowed = "0123456789abcdefABCDEF";
+        } else if (kind == '0') {
+            digits = 3;
+            allowed = "01234567";
+        } else if (kind == 'c' || kind == 'p' || kind == 'P') {
+            return Math.min(regex.length(), i + 1);
+        } else if (Character.isDigit(kind)) {
+            digits = regex.length();
+            allowed = "0123456789";
+        }
+        while (digits > 0 && i < regex.length()
+                && allowed.indexOf(regex.charAt(i)) >= 0) {
+            i += 1;
+            digits -= 1;
+        }
+        return i;
+    }
+
+    /** Adds RUN to RESULT if it is not empty, then clears it. */
+    private static void addRun(List<String> result, StringBuilder run) {
+        if (run.length() > 0) {
+            result.add(run.toString());
+            run.setLength(0);
+        }
+    }
+
+    /**
+     * Returns the sorted rows of every key in KEYS, intersected, looked
+     * up in the table whose position is in the header at TABLE of each
+     * segment. Returns no rows if any key is missing.
+     */
+    private int[] rowsWithAll(int table, Iterable<String> keys) {
+        int[] result = new int[0];
+        for (ByteBuffer buf : segments) {
+            int[] found = null;
+            for (String key : keys) {
+                int[] rows = lookup(buf, buf.getInt(table), key);
+                found = found == null ? rows : intersect(found, rows);
+                if (found.length == 0) {
+                    break;
+                }
+            }
+            if (found != null && found.length > 0) {
+                int[] joined = Arrays.copyOf(result,
+                        result.length + found.length);
+                System.arraycopy(found, 0, joined, result.length,
+                        found.length);
+                result = joined;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the rows of KEY in the table at START of the segment BUF,
+     *  or none. */
+    private static int[] lookup(ByteBuffer buf, int start, String key) {
+        int lo = 0;
+        int hi = buf.getInt(start);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int entry = start + 4 + mid * ENTRY_SIZE;
+            byte[] probe = new byte[buf.getInt(entry + 4)];
+            buf.get(start + buf.getInt(entry), probe);
+            int cmp = new String(probe, StandardCharsets.UTF_8).compareTo(key);
+            if (cmp == 0) {
+                int[] rows = new int[buf.getInt(entry + 12)];
+                int at = start + buf.getInt(entry + 8);
+                for (int i = 0; i < rows.length; i += 1) {
+                    rows[i] = buf.getInt(at + 4 * i);
+                }
+                return rows;
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return new int[0];
+    }
+
+    /** Returns the rows in both of the sorted arrays A and B. */
+    static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i += 1;
+            } else if (a[i] > b[j]) {
+                j += 1;
+            } else {
+                result[n] = a[i];
+                n += 1;
+                i += 1;
+                j += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Returns the encoded table of KEYS: the number of keys, a directory
+     * entry per key in order, the keys in UTF-8 and then their rows.
+     * Positions in the directory are from the start of the table.
+     */
+    private static byte[] table(TreeMap<String, List<Integer>> keys) {
+        ByteArrayOutputStream names = new ByteArrayOutputStream();
+        ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        DataOutputStream rowsOut = new DataOutputStream(rows);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(result);
+        int namesStart = 4 + keys.size() * ENTRY_SIZE;
+        try {
+            List<byte[]> encoded = new ArrayList<>();
+            for (String key : keys.keySet()) {
+                encoded.add(key.getBytes(StandardCharsets.UTF_8));
+            }
+            int namesLength = 0;
+            for (byte[] name : encoded) {
+                namesLength += name.length;
+            }
+            int rowsStart = namesStart + namesLength;
+            out.writeInt(keys.size());
+            int k = 0;
+            for (Map.Entry<String, List<Integer>> item : keys.entrySet()) {
+                byte[] name = encoded.get(k);
+                k += 1;
+                out.writeInt(namesStart + names.size());
+                out.writeInt(name.length);
+                out.writeInt(rowsStart + rows.size());
+                out.writeInt(item.getValue().size());
+                names.write(name);
+                for (int row : item.getValue()) {
+                    rowsOut.writeInt(row);
+                }
+            }
+            names.writeTo(out);
+            rows.writeTo(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        return result.toByteArray();
+    }
+}
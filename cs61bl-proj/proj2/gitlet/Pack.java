@@ -0,0 +1,416 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Pack class. Represents one pack of objects written by repack, made of
+ * two files in the packs directory: a .pack file holding the bytes of every
+ * object back to back, and a .idx file holding one fixed-width row per
+ * object (id, type, offset, length) sorted by id, so an object can be found
+ * with a binary search instead of a directory lookup. Packs are never
+ * changed once written.
+ * @author Nicole Ni and Ina Nierotka
+ */
+class Pack {
+
+    /** Type tag of a commit object. */
+    static final int COMMIT = 0;
+    /** Type tag of a blob object. */
+    static final int BLOB = 1;
+    /** Type tag of a tree object. */
+    static final int TREE = 2;
+
+    /** Version number written in the header of both files. */
+    private static final int VERSION = 1;
+    /** Magic string at the start of a .pack file. */
+    private static final String PACK_MAGIC = "GPAK";
+    /** Magic string at the start of a .idx file. */
+    private static final String INDEX_MAGIC = "GIDX";
+    /** Bytes in the header of both files: magic, version and count. */
+    private static final int HEADER_SIZE = 12;
+    /** Bytes in a raw SHA-1 id. */
+    private static final int ID_SIZE = Utils.UID_LENGTH / 2;
+    /** Bytes in one index row: id, type, offset and length. */
+    private static final int ROW_SIZE = ID_SIZE + 1 + 8 + 4;
+
+    /** The .pack file holding the object bytes. */
+    private final File packFile;
+    /** The memory-mapped .idx file. */
+    private final ByteBuffer index;
+    /** The memory-mapped .pack file, or null if it is too large to map. */
+    private final ByteBuffer data;
+    /** Number of objects in this pack. */
+    private final int count;
+
+    /**
+     * Opens the pack described by the given index file. The .pack file
+     * is expected next to it with the same base name.
+     * @param indexFile is the .idx file of the pack.
+     */
+    Pack(File indexFile) {
+        String base = indexFile.getName();
+        base = base.substring(0, base.length() - ".idx".length());
+        packFile = Utils.join(indexFile.getParentFile(), base + ".pack");
+        index = map(indexFile);
+        checkHeader(index, INDEX_MAGIC, indexFile);
+        count = index.getInt(8);
+        if (packFile.length() <= Integer.MAX_VALUE) {
+            data = map(packFile);
+            checkHeader(data, PACK_MAGIC, packFile);
+        } else {
+            data = null;
+        }
+    }
+
+    /**
+     * Returns every pack in the directory DIR, newest names last. Returns
+     * an empty list if DIR does not exist.
+     * @param dir is the packs directory.
+     */
+    static List<Pack> openAll(File dir) {
+        List<Pack> packs = new ArrayList<>();
+        String[] names = dir.list();
+        if (names == null) {
+            return packs;
+        }
+        Arrays.sort(names);
+        for (String name : names) {
+            if (name.endsWith(".idx")) {
+                packs.add(new Pack(Utils.join(dir, name)));
+            }
+        }
+        return packs;
+    }
+
+    /** Returns true if the object with the given id is in this pack.
+     * @param id is the full SHA-1 id of the object. */
+    boolean contains(String id) {
+        return find(id) >= 0;
+    }
+
+    /**
+     * Returns the stored bytes of the object with the given id, exactly
+     * as they were in its loose file, or null if it is not in this pack.
+     * @param id is the full SHA-1 id of the object.
+     */
+    byte[] read(String id) {
+        int row = find(id);
+        if (row < 0) {
+            return null;
+        }
+        int pos = HEADER_SIZE + row * ROW_SIZE + ID_SIZE + 1;
+        long offset = index.getLong(pos);
+        byte[] result = new byte[index.getInt(pos + 8)];
+        if (data != null) {
+            data.get((int) offset, result);
+            return result;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(packFile, "r")) {
+            in.seek(offset);
+            in.readFully(result);
+            return result;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /**
+     * Returns a stream of the stored bytes of the object with the given
+     * id, read straight from the pack without copying them all into
+     * memory, or null if it is not in this pack. When the pack is too
+     * large to map, the stream may run past the end of the object; the
+     * deflate stream every object is stored as ends on its own.
+     * @param id is the full SHA-1 id of the object.
+     */
+    InputStream open(String id) {
+        int row = find(id);
+        if (row < 0) {
+            return null;
+        }
+        int pos = HEADER_SIZE + row * ROW_SIZE + ID_SIZE + 1;
+        long offset = index.getLong(pos);
+        int length = index.getInt(pos + 8);
+        if (data != null) {
+            return new BufferInputStream(data.slice((int) offset, length));
+        }
+        try {
+            FileChannel channel = FileChannel.open(packFile.toPath(),
+                    StandardOpenOption.READ);
+            channel.position(offset);
+            return Channels.newInputStream(channel);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns the ids of all objects of the given type, in sorted order.
+     * @param type is COMMIT, TREE or BLOB. */
+    List<String> ids(int type) {
+        List<String> result = new ArrayList<>();
+        byte[] id = new byte[ID_SIZE];
+        for (int row = 0; row < count; row += 1) {
+            int pos = HEADER_SIZE + row * ROW_SIZE;
+            if (index.get(pos + ID_SIZE) == type) {
+                index.get(pos, id);
+                result.add(toHex(id));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ids of up to LIMIT objects of the given type whose ids
+     * start with PREFIX, in sorted order. The index is binary searched
+     * for the first id that is not less than PREFIX, and read forward
+     * from there only while the ids still start with it.
+     * @param prefix is the start of an id, in lower case hexadecimal.
+     * @param type is COMMIT, TREE or BLOB.
+     * @param limit is the most ids to return.
+     */
+    List<String> idsWithPrefix(String prefix, int type, int limit) {
+        List<String> result = new ArrayList<>();
+        StringBuilder lowest = new StringBuilder(prefix);
+        while (lowest.length() < Utils.UID_LENGTH) {
+            lowest.append('0');
+        }
+        byte[] key;
+        try {
+            key = toBytes(lowest.toString());
+        } catch (NumberFormatException excp) {
+            return result;
+        }
+        byte[] id = new byte[ID_SIZE];
+        for (int row = lowerBound(key); row < count && result.size() < limit;
+             row += 1) {
+            int pos = HEADER_SIZE + row * ROW_SIZE;
+            index.get(pos, id);
+            String hex = toHex(id);
+            if (!hex.startsWith(prefix)) {
+                break;
+            }
+            if (index.get(pos + ID_SIZE) == type) {
+                result.add(hex);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes a new pack holding the given loose object files into DIR,
+     * and returns the name of the pack. The loose files are copied in a
+     * buffer at a time, and must each be smaller than 2 GB. They are
+     * left alone; deleting them is up to the caller once this returns.
+     * @param dir is the packs directory.
+     * @param commits are the loose commit files, named by their id.
+     * @param trees are the loose tree files, named by their id.
+     * @param blobs are the loose blob files, named by their id.
+     */
+    static String write(File dir, List<File> commits, List<File> trees,
+                        List<File> blobs) {
+        TreeMap<String, File> objects = new TreeMap<>();
+        TreeMap<String, Integer> types = new TreeMap<>();
+        List<List<File>> byType = List.of(commits, blobs, trees);
+        for (int type = COMMIT; type <= TREE; type += 1) {
+            for (File f : byType.get(type)) {
+                objects.put(f.getName(), f);
+                types.put(f.getName(), type);
+            }
+        }
+        String name = "pack-" + Utils.sha1(String.join("", objects.keySet()));
+        File packFile = Utils.join(dir, name + ".pack");
+        File indexFile = Utils.join(dir, name + ".idx");
+        dir.mkdir();
+
+        long[] offsets = new long[objects.size()];
+        int[] lengths = new int[objects.size()];
+        try (DataOutputStream out = open(packFile)) {
+            writeHeader(out, PACK_MAGIC, objects.size());
+            long offset = HEADER_SIZE;
+            int i = 0;
+            for (File f : objects.values()) {
+                long length = Files.copy(f.toPath(), out);
+                offsets[i] = offset;
+                lengths[i] = (int) length;
+                offset += length;
+                i += 1;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        /* The index is written last, and renamed into place, so a pack
+         * is only visible to readers once it is complete. */
+        File indexTmp = Utils.tempFileFor(indexFile);
+        try (DataOutputStream out = open(indexTmp)) {
+            writeHeader(out, INDEX_MAGIC, objects.size());
+            int i = 0;
+            for (String id : objects.keySet()) {
+                out.write(toBytes(id));
+                out.writeByte(types.get(id));
+                out.writeLong(offsets[i]);
+                out.writeInt(lengths[i]);
+                i += 1;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        Utils.replace(indexTmp, indexFile);
+        return name;
+    }
+
+    /**
+     * Binary searches the index for the given id. Returns its row number,
+     * or -1 if it is not in this pack.
+     * @param id is the full SHA-1 id of the object.
+     */
+    private int find(String id) {
+        byte[] key;
+        try {
+            key = toBytes(id);
+        } catch (NumberFormatException excp) {
+            return -1;
+        }
+        if (key.length != ID_SIZE) {
+            return -1;
+        }
+        int row = lowerBound(key);
+        if (row == count) {
+            return -1;
+        }
+        byte[] probe = new byte[ID_SIZE];
+        index.get(HEADER_SIZE + row * ROW_SIZE, probe);
+        if (!Arrays.equals(probe, key)) {
+            return -1;
+        }
+        return row;
+    }
+
+    /** Returns the first row whose id is not less than the raw id KEY,
+     *  or count if there is none. */
+    private int lowerBound(byte[] key) {
+        byte[] probe = new byte[ID_SIZE];
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            index.get(HEADER_SIZE + mid * ROW_SIZE, probe);
+            if (Arrays.compareUnsigned(probe, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Returns a read-only memory map of FILE. */
+    private static MappedByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Throws an error unless BUF starts with MAGIC and our version.
+     * FILE is only used for the message. */
+    private static void checkHeader(ByteBuffer buf, String magic, File file) {
+        byte[] found = new byte[magic.length()];
+        if (buf.limit() < HEADER_SIZE) {
+            throw Utils.error("Corrupt pack file %s.", file.getName());
+        }
+        buf.get(0, found);
+        if (!magic.equals(new String(found, StandardCharsets.US_ASCII))
+                || buf.getInt(4) != VERSION) {
+            throw Utils.error("Corrupt pack file %s.", file.getName());
+        }
+    }
+
+    /** Returns a buffered data stream writing to FILE. */
+    private static DataOutputStream open(File file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file.toPath())));
+    }
+
+    /** Writes the header of a pack or index file holding COUNT objects. */
+    private static void writeHeader(DataOutputStream out, String magic,
+                                    int count) throws IOException {
+        out.write(magic.getBytes(StandardCharsets.US_ASCII));
+        out.writeInt(VERSION);
+        out.writeInt(count);
+    }
+
+    /** An input stream reading the remaining bytes of a buffer. */
+    private static class BufferInputStream extends InputStream {
+        /** The buffer being read. */
+        private final ByteBuffer buf;
+
+        /** Creates a stream reading BUFFER from its position on. */
+        BufferInputStream(ByteBuffer buffer) {
+            buf = buffer;
+        }
+
+        @Override
+        public int read() {
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            return buf.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+    }
+
+    /** Returns the raw bytes of the hexadecimal id HEX. Throws a
+     *  NumberFormatException if HEX is not hexadecimal. */
+    static byte[] toBytes(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new NumberFormatException(hex);
+            }
+            result[i] = (byte) ((high << 4) | low);
+        }
+        return result;
+    }
+
+    /** Returns the hexadecimal form of the raw id BYTES. */
+    static String toHex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16));
+            result.append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+}
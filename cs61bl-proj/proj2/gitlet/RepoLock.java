@@ -0,0 +1,192 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * RepoLock class. Represents the read-write lock of a repository. Any
+ * number of commands that only read the repository may hold it shared at
+ * once, while a command that changes the repository holds it alone.
+ * Acquiring it blocks until it is free. Threads of this process are kept
+ * apart by a ReentrantReadWriteLock, and processes by a lock on the lock
+ * file in the .gitlet directory, held through the operating system while
+ * any thread of this process holds the lock. The lock is shared by every
+ * repository made from the same warm repository, as the daemon and batch
+ * make them; repositories on the same directory made apart from each other
+ * only wait for each other through the lock file. The lock is reentrant,
+ * so a command may call another while holding it, but one held shared
+ * cannot be upgraded.
+ * @author Nicole Ni and Ina Nierotka
+ */
+class RepoLock {
+
+    /** Milliseconds to wait before trying again when another lock of the
+     *  same file in this process holds it. */
+    private static final int RETRY_MILLIS = 10;
+
+    /** The lock file. */
+    private final File file;
+    /** The lock between threads of this process. */
+    private final ReentrantReadWriteLock threads =
+            new ReentrantReadWriteLock();
+    /** The open lock file while the lock is held, otherwise null. */
+    private FileChannel channel;
+    /** The lock file lock while the lock is held, otherwise null. */
+    private FileLock lock;
+    /** The number of times threads of this process hold the lock. */
+    private int holds;
+
+    /**
+     * Constructor of a lock, which is not held until acquire is called.
+     * @param file is the lock file, created if needed.
+     */
+    RepoLock(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Acquires the lock, shared if SHARED is true and otherwise exclusive.
+     * Each call must be followed by a call to release with the same
+     * argument, in a finally block.
+     * @param shared is true if the caller only reads the repository.
+     */
+    void acquire(boolean shared) {
+        if (!shared && threads.getReadHoldCount() > 0
+                && !threads.isWriteLockedByCurrentThread()) {
+            throw new IllegalStateException(
+                    "Cannot upgrade a shared repository lock.");
+        }
+        Lock held = shared ? threads.readLock() : threads.writeLock();
+        held.lock();
+        try {
+            lockFile(shared);
+        } catch (RuntimeException | Error excp) {
+            held.unlock();
+            throw excp;
+        }
+    }
+
+    /**
+     * Releases the lock once, as acquired by acquire(SHARED).
+     * @param shared is true if the lock was acquired shared.
+     */
+    void release(boolean shared) {
+        try {
+            unlockFile();
+        } finally {
+            if (shared) {
+                threads.readLock().unlock();
+            } else {
+                threads.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Acquires the lock exclusively if that can be done without waiting,
+     * and returns true if it was. Each call that returns true must be
+     * followed by a call to release(false), in a finally block.
+     */
+    boolean tryAcquire() {
+        if (threads.getReadHoldCount() > 0
+                && !threads.isWriteLockedByCurrentThread()) {
+            return false;
+        }
+        if (!threads.writeLock().tryLock()) {
+            return false;
+        }
+        boolean locked = false;
+        try {
+            locked = tryLockFile();
+        } finally {
+            if (!locked) {
+                threads.writeLock().unlock();
+            }
+        }
+        return locked;
+    }
+
+    /** Returns true if the current thread holds the lock exclusively. */
+    boolean heldExclusively() {
+        return threads.isWriteLockedByCurrentThread();
+    }
+
+    /** Locks the lock file, shared if SHARED is true, unless a thread of
+     *  this process already holds the lock. Threads only hold it together
+     *  when none of them needs it exclusively, so the lock file is then
+     *  locked at least as strongly as needed. */
+    private synchronized void lockFile(boolean shared) {
+        if (holds == 0) {
+            try {
+                channel = FileChannel.open(file.toPath(),
+                        StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE);
+                while (lock == null) {
+                    try {
+                        lock = channel.lock(0, Long.MAX_VALUE, shared);
+                    } catch (OverlappingFileLockException excp) {
+                        Thread.sleep(RETRY_MILLIS);
+                    }
+                }
+            } catch (IOException | InterruptedException excp) {
+                closeFile();
+                throw new IllegalArgumentException(excp);
+            }
+        }
+        holds += 1;
+    }
+
+    /** Locks the lock file exclusively if that can be done without
+     *  waiting, unless the current thread already holds the lock, and
+     *  returns true if it is then held. Only called while holding the
+     *  write lock of threads, so no other thread holds the lock file. */
+    private synchronized boolean tryLockFile() {
+        if (holds == 0) {
+            try {
+                channel = FileChannel.open(file.toPath(),
+                        StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE);
+                lock = channel.tryLock(0, Long.MAX_VALUE, false);
+            } catch (OverlappingFileLockException excp) {
+                lock = null;
+            } catch (IOException excp) {
+                closeFile();
+                throw new IllegalArgumentException(excp);
+            }
+            if (lock == null) {
+                closeFile();
+                return false;
+            }
+        }
+        holds += 1;
+        return true;
+    }
+
+    /** Unlocks the lock file once no thread of this process holds it. */
+    private synchronized void unlockFile() {
+        holds -= 1;
+        if (holds == 0) {
+            closeFile();
+        }
+    }
+
+    /** Closes the lock file, which releases the lock file lock. */
+    private void closeFile() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        } finally {
+            channel = null;
+            lock = null;
+        }
+    }
+}
@@ -1,8 +1,26 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import static gitlet.Utils.*;
 
@@ -14,636 +32,1127 @@ import static gitlet.Utils.*;
  */
 public class Repository {
 
-    /** The current working directory. */
-    public static final File CWD = new File(System.getProperty("user.dir"));
+    /** The working directory, the root of the repository. */
+    private final File cwd;
     /**
      * The .gitlet directory. In it are three directories for the staging
      * areas and commit history, as well all pointers stored as text files. */
-    public static final File GITLET_DIR = join(CWD, ".gitlet");
+    private final File gitletDir;
     /**
-     * The stageAdd directory. Contains files of blobs stored
-     * by each call to add, cleared with each commit. */
-    public static final File STAGE_ADD = join(GITLET_DIR, "stageAdd");
-    /**
-     * The stageDelete directory.
-     * Used for the remove command. */
-    public static final File STAGE_DEL = join(GITLET_DIR, "stageDelete");
+     * The index file. Records which files are staged for addition or
+     * removal, and caches the stat data of tracked working files. */
+    private final File indexFile;
+    /** The .gitletignore file in the working directory. Names the files
+     *  that status does not list as untracked, and that add skips. */
+    private final File ignoreFile;
     /**
      * The allCommits directory. Stores each commit as a file.
      * Once a file is added it is never changed. */
-    public static final File COMMIT_HST = join(GITLET_DIR, "allCommits");
+    private final File commitDir;
     /** The blobStorage directory. Holds all blobs once committed. */
-    public static final File BLOBS = join(COMMIT_HST, "blobStorage");
+    private final File blobDir;
+    /**
+     * The rawStorage directory. Holds large blobs stored while rawBlobs
+     * is on, each as a read-only exact copy of its contents, in place of
+     * a blob in blobStorage. */
+    private final File rawDir;
+    /** The treeStorage directory. Holds the Tree of every directory of
+     * every commit, each stored once however many commits share it. */
+    private final File treeDir;
+    /**
+     * The packs directory. Holds the pack and index files written by
+     * repack, which replace the loose files of the objects they hold. */
+    private final File packDir;
+    /**
+     * The commit-graph file. Holds the parents, generation number and
+     * date of every commit, used to find split points for merge. */
+    private final File graphFile;
+    /**
+     * The commit-meta file. Holds the id, date and parents of every
+     * commit and where its message is in messagesFile, for global-log
+     * and find. */
+    private final File metaFile;
+    /** The messages of every commit, one after another, as UTF-8. */
+    private final File messagesFile;
+    /**
+     * The message-index directory. Its segments map the words and
+     * three-character runs of commit messages to the commit-meta rows
+     * holding them, for find. */
+    private final File messageIndexDir;
     /** The branchStorage directory. Holds all branch pointer files. */
-    public static final File BRANCHES = join(GITLET_DIR, "branchStorage");
+    private final File branchDir;
 
     /**
-     * The Head file. Serves as a pointer to the head branch,
-     * text is sha1 code of the commit. */
-    public static final File HEAD = join(BRANCHES, "HEAD");
+     * The Head file. Serves as a pointer to the head branch, of which
+     * only the name is used. */
+    private final File headFile;
     /**
      * The Main file. Serves as a pointer to the main branch,
      * text is sha1 code of the commit. */
-    public static final File MAIN = join(BRANCHES, "main");
+    private final File mainFile;
+
+    /** Result of a merge with a branch already merged into this one. */
+    public static final int ALREADY_MERGED = 0;
+    /** Result of a merge that only moved this branch forward. */
+    public static final int FAST_FORWARDED = 1;
+    /** Result of a merge that made a merge commit without conflicts. */
+    public static final int MERGED = 2;
+    /** Result of a merge that made a merge commit with conflicts. */
+    public static final int MERGE_CONFLICT = 3;
+
+    /** Most commits kept decoded in commitCache. */
+    private static final int COMMIT_CACHE_SIZE = 1024;
+    /** Most trees kept decoded in treeCache. */
+    private static final int TREE_CACHE_SIZE = 1024;
+    /** Most blob headers kept in blobHeaderCache. */
+    private static final int BLOB_HEADER_CACHE_SIZE = 4096;
+    /** Most commits made since the last message-index segment was
+     *  written before a new one is written. */
+    private static final int MESSAGE_INDEX_LAG = 64;
+    /** Threads checkout writes files on, unless the system property
+     *  CHECKOUT_THREADS_PROPERTY says otherwise. */
+    private static final int CHECKOUT_THREADS = 8;
+    /** System property holding the number of threads checkout writes
+     *  files on. */
+    private static final String CHECKOUT_THREADS_PROPERTY =
+            "gitlet.checkoutThreads";
+    /** System property that turns rawBlobs on. */
+    private static final String RAW_BLOBS_PROPERTY = "gitlet.rawBlobs";
+    /** System property that turns checkoutLinks on. */
+    private static final String CHECKOUT_LINKS_PROPERTY =
+            "gitlet.checkoutLinks";
+    /** System property that turns checkoutVerify on. */
+    private static final String CHECKOUT_VERIFY_PROPERTY =
+            "gitlet.checkoutVerify";
+
+    /** The packs of this repository, opened on first use. */
+    private List<Pack> packs;
+    /** The commit-graph of this repository, loaded on first use. */
+    private CommitGraph graph;
+    /** The index of this repository, loaded on first use. */
+    private Index index;
+    /** The rules of the .gitletignore file, compiled on first use. */
+    private Ignore ignore;
+    /** Number of threads checkout writes files on. */
+    private int checkoutThreads =
+            Integer.getInteger(CHECKOUT_THREADS_PROPERTY, CHECKOUT_THREADS);
+    /** True if files larger than Blob.IN_MEMORY_LIMIT are added to
+     *  rawStorage instead of being deflated in chunks. */
+    private boolean rawBlobs = Boolean.getBoolean(RAW_BLOBS_PROPERTY);
+    /** True if checkout makes files in rawStorage hard links to it. */
+    private boolean checkoutLinks =
+            Boolean.getBoolean(CHECKOUT_LINKS_PROPERTY);
+    /** True if checkout also restores the files that are the same in
+     *  both commits. */
+    private boolean checkoutVerify =
+            Boolean.getBoolean(CHECKOUT_VERIFY_PROPERTY);
+
+    /** The read-write lock of the repository. Commands that only read
+     *  hold it shared, and the others hold it alone. */
+    private final RepoLock repoLock;
+
+    /** Commits read so far, by id. */
+    private final LruCache<String, Commit> commitCache;
+    /** Trees read so far, by id. */
+    private final LruCache<String, Tree> treeCache;
+    /** Size and delta depth of blobs read so far, by id. */
+    private final LruCache<String, long[]> blobHeaderCache;
+
+    /**
+     * Constructor method. Returns the repository whose working directory
+     * is ROOT, with its .gitlet directory in ROOT, and empty caches.
+     * Nothing is read until a method is called, and ROOT need not hold a
+     * repository yet, for init.
+     * @param root is the working directory of the repository.
+     */
+    public Repository(File root) {
+        this(root, new RepoLock(join(root, ".gitlet", "lock")),
+                new LruCache<>(COMMIT_CACHE_SIZE),
+                new LruCache<>(TREE_CACHE_SIZE),
+                new LruCache<>(BLOB_HEADER_CACHE_SIZE));
+    }
+
+    /**
+     * Constructor method. Returns a repository on the same directory as
+     * WARM that shares its caches, which only hold objects that never
+     * change once stored, but reads everything else, such as the index
+     * and the packs, afresh. It also shares the lock of WARM, so that
+     * commands run on the two at once on different threads wait for each
+     * other, or read side by side, without going through the lock file.
+     * @param warm is a repository on the same directory.
+     */
+    public Repository(Repository warm) {
+        this(warm.cwd, warm.repoLock, warm.commitCache, warm.treeCache,
+                warm.blobHeaderCache);
+    }
+
+    /** Constructor method. Sets up the paths under ROOT and uses the
+     *  given lock and caches. */
+    private Repository(File root, RepoLock lock,
+                       LruCache<String, Commit> commits,
+                       LruCache<String, Tree> trees,
+                       LruCache<String, long[]> blobHeaders) {
+        cwd = root;
+        gitletDir = join(cwd, ".gitlet");
+        indexFile = join(gitletDir, "index");
+        ignoreFile = join(cwd, ".gitletignore");
+        commitDir = join(gitletDir, "allCommits");
+        blobDir = join(commitDir, "blobStorage");
+        rawDir = join(commitDir, "rawStorage");
+        treeDir = join(commitDir, "treeStorage");
+        packDir = join(gitletDir, "packs");
+        graphFile = join(gitletDir, "commit-graph");
+        metaFile = join(gitletDir, "commit-meta");
+        messagesFile = join(gitletDir, "commit-messages");
+        messageIndexDir = join(gitletDir, "message-index");
+        repoLock = lock;
+        branchDir = join(gitletDir, "branchStorage");
+        headFile = join(branchDir, "HEAD");
+        mainFile = join(branchDir, "main");
+        commitCache = commits;
+        treeCache = trees;
+        blobHeaderCache = blobHeaders;
+    }
 
     /**
      * Init method takes no parameters and returns void. Used to
      * set up the .gitlet directory within a working directory.
-     * Returns and prints error message if a .gitlet directory
-     * already exists within the CWD.
+     * Throws an error if a .gitlet directory already exists within
+     * the CWD.
      */
-    public static void init() {
-        if (GITLET_DIR.exists()) {
-            System.out.println("A Gitlet version-control system already"
+    public void init() {
+        if (gitletDir.exists()) {
+            throw error("A Gitlet version-control system already"
                     + " exists in the current directory.");
-            return;
         }
         /*make the gitlet directory folder, create sub-folders
          * of staging areas and storage of commit */
-        GITLET_DIR.mkdir();
-        STAGE_ADD.mkdir();
-        STAGE_DEL.mkdir();
-        COMMIT_HST.mkdir();
-        BRANCHES.mkdir();
-        BLOBS.mkdir();
-
-        /** create the commit object */
+        gitletDir.mkdir();
+        commitDir.mkdir();
+        branchDir.mkdir();
+        blobDir.mkdir();
+        treeDir.mkdir();
+        packDir.mkdir();
+
+        /** create the commit object, tracking an empty tree */
         Commit initCommit = new Commit("initial commit", null);
+        initCommit.setTree(writeTree(new Tree()));
 
         /** get hash codes, add to hash map */
-        String initSHA1 = sha1(serialize(initCommit));
+        byte[] encoded = initCommit.encode();
+        String initSHA1 = sha1(encoded);
 
         /** store in allCommits */
-        File initCommitStorage = new File(COMMIT_HST, initSHA1);
-        try {
-            initCommitStorage.createNewFile();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        Utils.writeObject(initCommitStorage, initCommit);
+        storeObject(commitDir, initSHA1, encoded);
+        recordInGraph(initSHA1, initCommit);
+        recordInMeta(initSHA1, initCommit);
 
         /** adjust pointers */
-        try {
-            HEAD.createNewFile();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        try {
-            MAIN.createNewFile();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        Utils.writeObject(MAIN, initSHA1);
-        Utils.writeObject(HEAD, MAIN);
+        writeRef(mainFile, initSHA1);
+        writeRef(headFile, mainFile);
     }
 
     /**
-     * Checks if the current working directory has a .gitlet directory,
+     * Checks if the working directory has a .gitlet directory,
      * Used in main to check for incorrect operations. Takes in nothing
      * and returns a boolean indicating if repository has been initialized.
      */
-    public static boolean checkGitlet() {
-        return GITLET_DIR.exists();
+    public boolean checkGitlet() {
+        return gitletDir.exists();
+    }
+
+    /** Getter method for the .gitlet directory, returns gitletDir. */
+    public File getGitletDir() {
+        return gitletDir;
     }
 
     /**
      * Adds a file to the staging area, creating a blob of the file
-     * from the file name and storing it. Method returns void,
-     * and prints error message if no file of the given name exists in the CWD.
+     * from the file name and storing it. If the name is that of a
+     * directory, every file under it is added, except those the
+     * .gitletignore file ignores. Method returns void, and throws an
+     * error if no file of the given name exists in the CWD, if the name
+     * leads out of the CWD, or if the file is ignored and not already
+     * tracked or staged. The name is staged as its path from the CWD, so
+     * ./d/x.txt and d/x.txt stage the same file.
      * File does not get added if it is A) unmodified from the most recent
      * commit or B) has already been added since the most recent commit
      * and has not been modified since.
      * @param fileName is a String of the name of the file being added.
      */
-    public static void add(String fileName) {
-        File file = join(CWD, fileName);
-        File inRm = join(STAGE_DEL, fileName);
-        if (inRm.exists()) {
-            File blobFile = readObject(inRm, File.class);
-            Blob toRestore = readObject(blobFile, Blob.class);
-            writeContents(file, toRestore.getContent());
-            inRm.delete();
+    public void add(String fileName) {
+        repoLock.acquire(false);
+        try {
+            File file = join(cwd, fileName);
+            Commit recentCommit =
+                    readCommit(readObject(headBranch(), String.class));
+            try {
+                String path = relativePath(file);
+                if (path.equals("..") || path.startsWith("../")) {
+                    throw error("File is outside the working directory.");
+                }
+                if (file.isDirectory()) {
+                    String prefix = path.isEmpty() ? "" : path + "/";
+                    for (String name : walk(file, prefix)) {
+                        addFile(name, recentCommit);
+                    }
+                } else {
+                    if (ignore().ignored(path, false)
+                            && lookup(recentCommit, path) == null
+                            && index().get(path) == null) {
+                        throw error("File is ignored; remove it from "
+                                + ".gitletignore to add it.");
+                    }
+                    addFile(path, recentCommit);
+                }
+            } finally {
+                index().save();
+            }
+        } finally {
+            repoLock.release(false);
+        }
+    }
+
+    /**
+     * Helper method to add, adds the file with the given name, relative
+     * to the CWD, without saving the index. Returns void.
+     * @param fileName is the name of the file being added.
+     * @param recentCommit is the most recent commit.
+     */
+    private void addFile(String fileName, Commit recentCommit) {
+        File file = join(cwd, fileName);
+        Index.Entry entry = index().get(fileName);
+        if (entry != null && entry.getState() == Index.REMOVED) {
+            copyBlob(entry.getBlobID(), file);
+            index().put(fileName, entry.getBlobID(), Index.TRACKED, file);
             return;
         } else {
             if (!file.exists()) {
-                System.out.println("File does not exist.");
-                return;
+                throw error("File does not exist.");
             }
         }
 
-        /** create blob of the file as is */
-        Blob newBlob = new Blob(file);
-        String blobSHA1 = sha1(serialize(newBlob));
-
-        /** check if blob exists in most recent commit, return if true */
-        File headBranch = readObject(HEAD, File.class);
-        String headSHA1 = readObject(headBranch, String.class);
-        File recentCommitFile = join(COMMIT_HST, headSHA1);
-        Commit recentCommit = readObject(recentCommitFile, Commit.class);
-        TreeMap<String, File> blobFiles = recentCommit.getBlobs();
-        Set keys = blobFiles.keySet();
-        for (Iterator i = keys.iterator(); i.hasNext();) {
-            String name = (String) i.next();
-            File iFile = blobFiles.get(name);
-            if (iFile.getName().equals(blobSHA1)) {
-                return;
-            }
+        /** return without reading the file if its stat data shows it
+         * still holds the blob of the most recent commit, or the blob
+         * already staged */
+        String tracked = lookup(recentCommit, fileName);
+        if (tracked != null
+                && index().unchanged(fileName, tracked, file)) {
+            return;
+        }
+        if (entry != null && entry.getState() == Index.ADDED
+                && index().unchanged(fileName, entry.getBlobID(), file)) {
+            return;
         }
 
+        /** store the file as is, hashing it while it is copied, unless
+         * a blob with the same contents is already stored */
+        String blobSHA1 = storeBlob(file, tracked);
 
-        /** check if blobs in stage area are of same file, rewrite if true */
-        for (File i: STAGE_ADD.listFiles()) {
-            Blob iBlob = (Blob) readObject(i, Blob.class);
-            if (iBlob.getFileName().equals(fileName)) {
-                i.delete();
-                break;
-            }
+        /** check if the file has the same blob in the most recent commit,
+         * return if true */
+        if (tracked != null && tracked.equals(blobSHA1)) {
+            remember(fileName, blobSHA1, file);
+            return;
         }
-        /** writes blob to a file in STAGE_ADD */
-        File stageFile = join(STAGE_ADD, fileName);
-        writeObject(stageFile, newBlob);
+
+        /** stages the blob, replacing any earlier staged version of
+         * the same file */
+        index().put(fileName, blobSHA1, Index.ADDED, file);
     }
 
     /**
      * Method creates a commit, stores all the blobs in the staging
-     * area within it, clears the staging directory,moves the pointers,
-     * then stores the commit in the COMMIT_HST folder. Aborts if no
-     * files are in the staging area. Case of no message is handled in
-     * the Main.java class.
+     * area within it, clears the staging area in the index, moves the pointers,
+     * then stores the commit in the commitDir folder. Throws an error if
+     * the message is empty or no files are in the staging area.
      * @param message This is a string with the log message passed in,
      *                which gets stored within the created commit.
      * @param otherParentSHA1 is null unless the commit is called through
      *                        merge, in which case it is added to the
      *                        created commit object.
+     * @return the id of the new commit.
      */
-    public static void commit(String message, String otherParentSHA1) {
-        if (message.length() == 0) {
-            System.out.println("Please enter a commit message.");
-        }
-        /** failure case: STAGE_ADD empty */
-        if (otherParentSHA1 == null) {
-            if (STAGE_ADD.listFiles().length == 0
-                    && STAGE_DEL.listFiles().length == 0) {
-                System.out.println("No changes added to the commit.");
-                return;
+    public String commit(String message, String otherParentSHA1) {
+        repoLock.acquire(false);
+        try {
+            if (message.length() == 0) {
+                throw error("Please enter a commit message.");
             }
-        }
-        /** create new commit */
-        File headBranch = readObject(HEAD, File.class);
-        String headSHA1 = Utils.readObject(headBranch, String.class);
-        Commit newCommit = new Commit(message, headSHA1);
-        newCommit.setSecondParentHash(otherParentSHA1);
-        String commitSha1 = sha1(serialize(newCommit));
-
-        /** add files from staging area to commit,
-         * then clear the staging directory */
-        for (File i: STAGE_ADD.listFiles()) {
-            Blob iBlob = readObject(i, Blob.class);
-            String iBlobSHA1 = sha1(serialize(iBlob));
-            File f = join(BLOBS, iBlobSHA1);
-            writeObject(f, iBlob);
-            newCommit.addBlob(i.getName(), f);
-            i.delete();
-        }
-        /** add tracked files */
-        File prevCommitFile = join(COMMIT_HST, headSHA1);
-        Commit prevCommit = readObject(prevCommitFile, Commit.class);
-        TreeMap<String, File> prevBlobs = prevCommit.getBlobs();
-        Set keys = prevBlobs.keySet();
-        for (Iterator i = keys.iterator(); i.hasNext();) {
-            String fileName = (String) i.next();
-            if (!newCommit.getBlobs().containsKey(fileName)) {
-                File rmTracker = join(STAGE_DEL, fileName);
-                if (!rmTracker.exists()) {
-                    File trackedBlob = prevBlobs.get(fileName);
-                    newCommit.addBlob(fileName, trackedBlob);
-                } else {
-                    rmTracker.delete();
+            /** failure case: nothing staged */
+            if (otherParentSHA1 == null) {
+                if (!index().hasStaged()) {
+                    throw error("No changes added to the commit.");
                 }
             }
-        }
-        for (File i: STAGE_DEL.listFiles()) {
-            i.delete();
-        }
-        /** rewrite pointers */
-        writeObject(headBranch, commitSha1);
+            /** create new commit */
+            File headBranch = headBranch();
+            String headSHA1 = Utils.readObject(headBranch, String.class);
+            Commit newCommit = new Commit(message, headSHA1);
+            newCommit.setSecondParentHash(otherParentSHA1);
 
-        /** store to commit history directory in .gitlet */
-        File commitStorage = new File(COMMIT_HST, commitSha1);
-        try {
-            commitStorage.createNewFile();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            /** apply the staging area to the tree of the previous commit:
+             * files staged for addition, whose blobs were stored by add, are
+             * added or replaced, and files staged for removal are dropped.
+             * Directories without changes keep their tree. */
+            TreeMap<String, String> changes = new TreeMap<>();
+            for (String name: index().names(Index.ADDED)) {
+                changes.put(name, index().get(name).getBlobID());
+            }
+            for (String name: index().names(Index.REMOVED)) {
+                changes.put(name, null);
+            }
+            Commit prevCommit = readCommit(headSHA1);
+            newCommit.setTree(writeTree(
+                    updateTree(prevCommit.getTree(), changes)));
+            byte[] encoded = newCommit.encode();
+            String commitSha1 = sha1(encoded);
+
+            /** store to commit history directory in .gitlet, before any
+             * pointer refers to it */
+            storeObject(commitDir, commitSha1, encoded);
+            recordInGraph(commitSha1, newCommit);
+            recordInMeta(commitSha1, newCommit);
+            /** rewrite pointers */
+            writeRef(headBranch, commitSha1);
+            /** clear the staging area */
+            index().committed();
+            index().save();
+            return commitSha1;
+        } finally {
+            repoLock.release(false);
         }
-        Utils.writeObject(commitStorage, newCommit);
     }
 
     /**
      * Method takes in a file name and rewrites the file in the
      * CWD to be exactly how it was in the most recent commit.
-     * Prints error message if file does not exist in the most
+     * Throws an error if file does not exist in the most
      * recent commit. Aborts if no change to the file has been made
      * since the most recent commit. Returns void.
      * @param file This is a string of the name of the file to check out.
      */
-    public static void checkoutFile(String file) {
-        /** create filepath to file in CWD */
-        File toRewrite = join(CWD, file);
-        String cwdSHA1 = sha1(serialize(toRewrite));
-        /**
-         * create filepath to most recent commit (HEAD),
-         * pulls list of all blobs within it */
-        File headBranch = readObject(HEAD, File.class);
-        String headSHA1 = readObject(headBranch, String.class);
-        File recentCommitFile = new File(COMMIT_HST, headSHA1);
-        Commit recentCommit = readObject(recentCommitFile, Commit.class);
-        TreeMap<String, File> commitBlobs = recentCommit.getBlobs();
-
-        Set keys = commitBlobs.keySet();
-
-        for (Iterator i = keys.iterator(); i.hasNext();) {
-            String name = (String) i.next();
-            File b = commitBlobs.get(name);
-            Blob blob = readObject(b, Blob.class);
-            if (blob.getFileName().equals(file)) {
-                if (blob.getContentSHA1().equals(cwdSHA1)) {
-                    return;
-                }
-                writeContents(toRewrite, blob.getContent());
-                return;
-            }
+    public void checkoutFile(String file) {
+        repoLock.acquire(false);
+        try {
+            /** find the most recent commit (HEAD) */
+            File headBranch = headBranch();
+            String headSHA1 = readObject(headBranch, String.class);
+            Commit recentCommit = readCommit(headSHA1);
+            checkoutFileHelper(recentCommit, file);
+        } finally {
+            repoLock.release(false);
         }
-        System.out.println("File does not exist in that commit.");
     }
 
     /**
      * Method takes in a file name and commit id. Rewrites the
      * file in the CWD to be exactly how it was in the given commit.
-     * Prints error message if file does not exist in the most recent
+     * Throws an error if file does not exist in the most recent
      * commit OR if no commit with the given id exists. Aborts if no
      * change to the file has been made since that commit. Returns void.
      * @param file This is a string of the name of the file to check out.
      * @param commitID This is a string of the commit id to check out from.
      */
-    public static void checkoutFileFromCommit(String commitID, String file) {
-        /** create filepath to file in the CWD */
-        File toRewrite = join(CWD, file);
-        String cwdSHA1 = sha1(serialize(toRewrite));
+    public void checkoutFileFromCommit(String commitID, String file) {
+        repoLock.acquire(false);
+        try {
+            Commit commit = readCommit(resolveCommit(commitID));
+            checkoutFileHelper(commit, file);
+        } finally {
+            repoLock.release(false);
+        }
+    }
 
-        if (commitID.length() < 10) {
-            for (File f: COMMIT_HST.listFiles()) {
-                String prevCommitID = f.getName();
-                if (prevCommitID.startsWith(commitID)) {
-                    commitID = prevCommitID;
-                }
-            }
+    /**
+     * Helper method for checkoutFile and checkoutFileFromCommit. Looks
+     * the file up in the given commit by its path, reading only the
+     * trees of its directories, and restores it in the CWD. Throws an
+     * error if the file does not exist in the commit. Returns void.
+     * @param commit This is the commit to check out from.
+     * @param file This is a string of the name of the file to check out.
+     */
+    private void checkoutFileHelper(Commit commit, String file) {
+        String blobID = lookup(commit, file);
+        if (blobID == null) {
+            throw error("File does not exist in that commit.");
         }
-        File commitFile = new File(COMMIT_HST, commitID);
+        restore(file, blobID);
+        index().save();
+    }
 
-        if (!commitFile.exists()) {
-            System.out.println("No commit with that id exists.");
+    /**
+     * Makes the file in the CWD with the given name hold the blob with the
+     * given id, and records that in the index. The blob is not read at
+     * all if the file already holds it, which is known without reading
+     * the file if its stat data in the index is unchanged, and otherwise
+     * by hashing its contents. Returns void.
+     * @param file This is the name of the file.
+     * @param blobID This is the id of the blob it should hold.
+     */
+    private void restore(String file, String blobID) {
+        File toRewrite = join(cwd, file);
+        if (index().unchanged(file, blobID, toRewrite)) {
             return;
         }
-        /** write commit & pull list of files */
-        Commit commit = readObject(commitFile, Commit.class);
-        TreeMap<String, File> commitBlobs = commit.getBlobs();
+        writeWorking(toRewrite, blobID, true);
+        remember(file, blobID, toRewrite);
+    }
 
-        Set keys = commitBlobs.keySet();
+    /**
+     * Writes the blob with the given id to the working file TARGET. If
+     * VERIFY is true and TARGET already holds the blob, found by hashing
+     * it, it is left alone. Touches neither the index nor any other
+     * state of this repository, so that it can run on many threads at
+     * once. Returns void.
+     * @param target This is the working file.
+     * @param blobID This is the id of the blob it should hold.
+     * @param verify This is true if TARGET may already hold the blob.
+     */
+    private void writeWorking(File target, String blobID, boolean verify) {
+        if (verify && target.isFile()
+                && blobID.equals(new Blob(target).getContentSHA1())) {
+            return;
+        }
+        copyBlob(blobID, target);
+    }
 
-        for (Iterator i = keys.iterator(); i.hasNext();) {
-            String name = (String) i.next();
-            File b = commitBlobs.get(name);
-            Blob blob = readObject(b, Blob.class);
-            if (blob.getFileName().equals(file)) {
-                if (blob.getContentSHA1().equals(cwdSHA1)) {
-                    return;
+    /**
+     * Makes the files in the CWD named by the keys of FILES hold the blobs
+     * their values name, and records them in the index. Those named in
+     * VERIFY may already hold their blob, and are only written if they do
+     * not. Files are handed out in order of blob id, the order objects are
+     * stored in packs, to a pool of checkoutThreads threads that read and
+     * write them at once, or written in turn on this thread if there is
+     * only one. If any fail, the others are still written, and
+     * the error of the first to fail in that order is thrown, so the same
+     * error is thrown whatever order the threads ran in. Returns void.
+     * @param files This maps names of files to the ids of their blobs.
+     * @param verify This holds the names of files that may be unchanged.
+     */
+    private void writeWorkingFiles(Map<String, String> files,
+                                   Set<String> verify) {
+        List<Map.Entry<String, String>> order =
+                new ArrayList<>(files.entrySet());
+        order.sort(Map.Entry.comparingByValue());
+        /* the packs are opened before the threads share them */
+        packs();
+        int threads = Math.min(checkoutThreads, order.size());
+        RuntimeException failure = null;
+        if (threads <= 1) {
+            for (Map.Entry<String, String> e : order) {
+                File target = join(cwd, e.getKey());
+                try {
+                    writeWorking(target, e.getValue(),
+                            verify.contains(e.getKey()));
+                    remember(e.getKey(), e.getValue(), target);
+                } catch (RuntimeException excp) {
+                    if (failure == null) {
+                        failure = excp;
+                    }
                 }
-                writeContents(toRewrite, blob.getContent());
-                return;
             }
+            if (failure != null) {
+                throw failure;
+            }
+            return;
+        }
+        List<Future<?>> results = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (Map.Entry<String, String> e : order) {
+                results.add(pool.submit(() -> writeWorking(
+                        join(cwd, e.getKey()), e.getValue(),
+                        verify.contains(e.getKey()))));
+            }
+        } finally {
+            pool.shutdown();
+        }
+        for (int i = 0; i < order.size(); i += 1) {
+            String name = order.get(i).getKey();
+            try {
+                results.get(i).get();
+                remember(name, order.get(i).getValue(), join(cwd, name));
+            } catch (ExecutionException excp) {
+                if (failure == null) {
+                    failure = unwrap(excp.getCause());
+                }
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw new IllegalArgumentException(excp);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /** Returns CAUSE, the error a thread writing a file threw, as an
+     *  unchecked exception to rethrow. */
+    private static RuntimeException unwrap(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IllegalArgumentException(cause);
+    }
+
+    /**
+     * Sets the number of threads checkout writes files on, which is
+     * otherwise the gitlet.checkoutThreads system property, or 8.
+     * Returns void.
+     * @param threads is the number of threads, 1 to write files one at a
+     *                time on the calling thread.
+     */
+    public void setCheckoutThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive");
         }
-        System.out.println("File does not exist in that commit.");
+        checkoutThreads = threads;
+    }
+
+    /**
+     * Sets whether add stores files larger than Blob.IN_MEMORY_LIMIT raw,
+     * uncompressed and unchunked, in the rawStorage directory, which is
+     * otherwise the gitlet.rawBlobs system property. Checkout copies such
+     * files with FileChannel.transferTo, which keeps the bytes in the
+     * kernel, or links to them if checkoutLinks is on. This costs the
+     * space compression and chunking would save. Returns void.
+     * @param raw is true to store large files raw.
+     */
+    public void setRawBlobs(boolean raw) {
+        rawBlobs = raw;
+    }
+
+    /**
+     * Sets whether checkout makes files stored raw hard links to their
+     * copy in rawStorage instead of copying them, which is otherwise the
+     * gitlet.checkoutLinks system property. Such files are read-only, as
+     * the stored copy is, so they have to be replaced rather than edited
+     * in place. Where a link cannot be made, as across file systems, the
+     * file is copied instead. Returns void.
+     * @param links is true to check raw files out as links.
+     */
+    public void setCheckoutLinks(boolean links) {
+        checkoutLinks = links;
+    }
+
+    /**
+     * Sets whether checkout of a branch also restores every file that is
+     * the same in both commits but was changed in the CWD, which is
+     * otherwise the gitlet.checkoutVerify system property. Doing so has
+     * to look at every file of the branch, where checkout otherwise reads
+     * only the subtrees that differ. Returns void.
+     * @param verify is true to restore files the same in both commits.
+     */
+    public void setCheckoutVerify(boolean verify) {
+        checkoutVerify = verify;
     }
 
     /**
      * Method takes in a branch name and rewrites files in the CWD
-     * to match the commit at the head of the given branch. Method aborts
-     * and prints error messages if A) there is no branch with the given
+     * to match the commit at the head of the given branch. Method throws
+     * an error if A) there is no branch with the given
      * name B) the given name is the current branch and C) there is an
      * untracked file that is in the commit being checked out. Deletes
      * any tracked files not in the checked out commit, and clears the
-     * staging area. Returns void.
+     * staging area, as checkoutCommit does. Returns void.
      * @param branchName This is the name of the branch we want to check
      *                   out from.
      */
-    public static void checkoutBranch(String branchName) {
-        File branch = join(BRANCHES, branchName);
-        if (!branch.exists()) {
-            System.out.println("No such branch exists.");
-            return;
-        }
-        String branchCommitName = readObject(branch, String.class);
-        File headBranch = readObject(HEAD, File.class);
-        String currentCommitName = readObject(headBranch, String.class);
-        if (branchName.equals(headBranch.getName())) {
-            System.out.println("No need to checkout the current branch.");
-            return;
-        }
-        File branchCommitFile = join(COMMIT_HST, branchCommitName);
-        Commit branchCommit = readObject(branchCommitFile, Commit.class);
-        TreeMap<String, File> checkoutBlobs = branchCommit.getBlobs();
-
-        File currCommitFile = join(COMMIT_HST, currentCommitName);
-        Commit currCommit = readObject(currCommitFile, Commit.class);
-        TreeMap<String, File> trackedBlobs = currCommit.getBlobs();
-
-        Set checkoutNames = checkoutBlobs.keySet();
-        Set trackedNames = trackedBlobs.keySet();
-        for (Iterator i = checkoutNames.iterator(); i.hasNext();) {
-            String checkoutName = (String) i.next();
-            if (!trackedBlobs.containsKey(checkoutName)) {
-                File fileInCWD = join(CWD, checkoutName);
-                if (fileInCWD.exists()) {
-                    System.out.println("There is an untracked file in the way;"
-                            + " delete it, or add and commit it first.");
-                    return;
-                }
+    public void checkoutBranch(String branchName) {
+        repoLock.acquire(false);
+        try {
+            File branch = join(branchDir, branchName);
+            if (!branch.exists()) {
+                throw error("No such branch exists.");
+            }
+            if (branchName.equals(headBranch().getName())) {
+                throw error("No need to checkout the current branch.");
             }
+            checkoutCommit(readObject(branch, String.class));
+            writeRef(headFile, branch);
+        } finally {
+            repoLock.release(false);
         }
+    }
+
+    /**
+     * Makes the files in the CWD match the commit with the full id
+     * COMMITID, without moving any branch, for checkoutBranch and reset.
+     * Throws an error if there is an untracked file that is in the commit
+     * being checked out. Deletes any tracked files not in the checked out
+     * commit, and clears the staging area. Only the files whose blob
+     * differs between the two commits are written or deleted, found by
+     * comparing their trees, and only those are checked for untracked
+     * files in the way; subtrees that are the same in both are not read.
+     * A file with the same blob in both keeps any change made to it in
+     * the CWD, unless checkoutVerify is on: it is then rewritten if it no
+     * longer holds that blob, which its stat data in the index usually
+     * shows without reading it. Must be called holding the repository
+     * lock alone. Returns void.
+     * @param commitID This is the full id of the commit to check out.
+     */
+    private void checkoutCommit(String commitID) {
+        Commit branchCommit = readCommit(commitID);
+        Commit currCommit = readCommit(readObject(headBranch(), String.class));
+        TreeMap<String, String[]> changed = new TreeMap<>();
+        diffTrees(currCommit.getTree(), branchCommit.getTree(), "",
+                changed);
 
+        for (Map.Entry<String, String[]> e : changed.entrySet()) {
+            if (e.getValue()[0] == null
+                    && join(cwd, e.getKey()).exists()
+                    && !ignore().ignored(e.getKey(), false)) {
+                throw error("There is an untracked file in the way;"
+                        + " delete it, or add and commit it first.");
+            }
+        }
 
-        for (Iterator i = trackedNames.iterator(); i.hasNext();) {
-            String name = (String) i.next();
-            if (!checkoutBlobs.containsKey(name)) {
-                File toDelete = join(CWD, name);
-                toDelete.delete();
+        index().removeAll(Index.ADDED);
+        TreeMap<String, String> toWrite = new TreeMap<>();
+        HashSet<String> toVerify = new HashSet<>();
+        for (Map.Entry<String, String[]> e : changed.entrySet()) {
+            String name = e.getKey();
+            String blobID = e.getValue()[1];
+            if (blobID == null) {
+                deleteWorking(name);
+                index().remove(name);
+            } else {
+                toWrite.put(name, blobID);
             }
         }
-        Set checkoutFileNames = checkoutBlobs.keySet();
-        for (Iterator j = checkoutFileNames.iterator(); j.hasNext();) {
-            String name = (String) j.next();
-            File blobFile = checkoutBlobs.get(name);
-            File toRewrite = join(CWD, name);
-            Blob blob = readObject(blobFile, Blob.class);
-            writeContents(toRewrite, blob.getContent());
+        if (checkoutVerify) {
+            for (Map.Entry<String, String> e
+                    : files(branchCommit).entrySet()) {
+                String name = e.getKey();
+                if (!changed.containsKey(name) && !index().unchanged(
+                        name, e.getValue(), join(cwd, name))) {
+                    toWrite.put(name, e.getValue());
+                    toVerify.add(name);
+                }
+            }
         }
-        for (File file: STAGE_ADD.listFiles()) {
-            file.delete();
+        try {
+            writeWorkingFiles(toWrite, toVerify);
+        } finally {
+            index().save();
         }
-        writeObject(HEAD, branch);
     }
 
     /**
-     * Method prints information about the head commit, then each parent
-     * down the branch. Takes in no parameters and returns void.
+     * Method returns the log entries of the head commit, then of each
+     * first parent down the branch, at most MAXCOUNT of them and stopping
+     * at the first one older than SINCE. The chain is walked one commit at
+     * a time as the entries are asked for, so the first ones can be shown
+     * before the rest of the history is read, and a caller that stops
+     * early never reads the rest. Only the head is read under the
+     * repository lock, since commits never change once stored.
+     * @param maxCount is the most entries to return, or -1 for no limit.
+     * @param since is the oldest date to return, or null for no limit.
+     * @return the entries, newest first.
      */
-    public static void log() {
-        File headBranch = readObject(HEAD, File.class);
-        String headValue = readObject(headBranch, String.class);
-        File first = new File(COMMIT_HST, headValue);
-        logPrinter(first);
+    public Iterator<LogEntry> log(int maxCount, Date since) {
+        String head;
+        repoLock.acquire(true);
+        try {
+            head = readObject(headBranch(), String.class);
+        } finally {
+            repoLock.release(true);
+        }
+        return new Iterator<>() {
+            private String next = head;
+            private int count = 0;
+            private Commit nextCommit;
+
+            @Override
+            public boolean hasNext() {
+                if (nextCommit == null && next != null && count != maxCount) {
+                    nextCommit = readCommit(next);
+                    if (since != null
+                            && nextCommit.getTimeStamp().before(since)) {
+                        next = null;
+                        nextCommit = null;
+                    }
+                }
+                return nextCommit != null;
+            }
+
+            @Override
+            public LogEntry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                LogEntry entry = new LogEntry(next,
+                        nextCommit.getTimeStamp(), nextCommit.getMessage());
+                next = nextCommit.getParentHash();
+                nextCommit = null;
+                count += 1;
+                return entry;
+            }
+        };
     }
 
     /**
-     * Helper method for log. Takes in the file of the head commit,
-     * then prints the information about the commit, then checks the
-     * parent and recursively calls the helper function on the file
-     * of the parent commit. Returns void.
-     * @param first This is a file of a commit, stored within
-     *              the COMMIT_HST directory in .gitlet.
+     * Method returns the log entries of every commit, in any order, read
+     * from the commit-meta file as they are asked for. The file is mapped
+     * under the repository lock, and later commits are not returned.
+     * @return the entries.
+     */
+    public Iterator<LogEntry> globalLog() {
+        CommitMeta meta;
+        repoLock.acquire(true);
+        try {
+            meta = commitMeta();
+        } finally {
+            repoLock.release(true);
+        }
+        return new Iterator<>() {
+            private int row = 0;
+
+            @Override
+            public boolean hasNext() {
+                return row < meta.size();
+            }
+
+            @Override
+            public LogEntry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                LogEntry entry = new LogEntry(meta.id(row),
+                        new Date(meta.date(row)), meta.message(row));
+                row += 1;
+                return entry;
+            }
+        };
+    }
+
+    /** Method returns the ids of the commits with the same message as a
+     * given string.
+     * @param message This string is the message each commit is compared to.
+     * @return the ids, in any order.
      */
-    public static void logPrinter(File first) {
-        String commitID = first.getName();
-        Commit current = readObject(first, Commit.class);
-        System.out.println("===");
-        System.out.println("commit " + commitID);
-        System.out.println("Date: "
-                + Commit.getSimpleDateFormat().format(current.getTimeStamp()));
-        System.out.println(current.getMessage());
-        System.out.println();
-        if (current.getParentHash() != null) {
-            File parentFile = new File(
-                    Repository.COMMIT_HST, current.getParentHash());
-            logPrinter(parentFile);
+    public List<String> find(String message) {
+        repoLock.acquire(true);
+        try {
+            CommitMeta meta = commitMeta();
+            byte[] wanted = message.getBytes(StandardCharsets.UTF_8);
+            List<String> found = new ArrayList<>();
+            for (int row = 0; row < meta.size(); row += 1) {
+                if (meta.messageEquals(row, wanted)) {
+                    found.add(meta.id(row));
+                }
+            }
+            return found;
+        } finally {
+            repoLock.release(true);
         }
     }
 
     /**
-     * Method prints information about every commit, in any order.
-     * Takes in no parameters, returns void.
+     * Method returns the ids of the commits whose messages hold every word
+     * of a given string, ignoring case and punctuation. Commits holding
+     * the words in the same order come first, then those holding them
+     * more often, then newer ones.
+     * @param query This string holds the words to look for.
+     * @return the ids, best match first.
      */
-    public static void globalLog() {
-        List<String> commitSha1s = plainFilenamesIn(COMMIT_HST);
-        for (String commitSha1: commitSha1s) {
-            File currCommit = new File(COMMIT_HST, commitSha1);
-            Commit curr = readObject(currCommit, Commit.class);
-            System.out.println("===");
-            System.out.println("commit " + commitSha1);
-            System.out.println("Date: "
-                    + Commit.getSimpleDateFormat().format(curr.getTimeStamp()));
-            System.out.println(curr.getMessage());
-            System.out.println();
+    public List<String> findWords(String query) {
+        repoLock.acquire(true);
+        try {
+            List<String> words = MessageIndex.words(query);
+            CommitMeta meta = commitMeta();
+            List<Integer> found = new ArrayList<>();
+            if (!words.isEmpty()) {
+                MessageIndex messages = messageIndex(meta);
+                for (int row : messages.rowsWithWords(words)) {
+                    found.add(row);
+                }
+                for (int row = messages.covered(); row < meta.size();
+                     row += 1) {
+                    List<String> has = MessageIndex.words(meta.message(row));
+                    if (has.containsAll(words)) {
+                        found.add(row);
+                    }
+                }
+            }
+            HashMap<Integer, int[]> ranks = new HashMap<>();
+            for (int row : found) {
+                List<String> has = MessageIndex.words(meta.message(row));
+                int hits = 0;
+                for (String word : has) {
+                    if (words.contains(word)) {
+                        hits += 1;
+                    }
+                }
+                int inOrder =
+                        Collections.indexOfSubList(has, words) >= 0 ? 1 : 0;
+                ranks.put(row, new int[] {inOrder, hits});
+            }
+            found.sort((a, b) -> {
+                int[] x = ranks.get(a);
+                int[] y = ranks.get(b);
+                if (x[0] != y[0]) {
+                    return Integer.compare(y[0], x[0]);
+                } else if (x[1] != y[1]) {
+                    return Integer.compare(y[1], x[1]);
+                }
+                return Long.compare(meta.date(b), meta.date(a));
+            });
+            return ids(meta, found);
+        } finally {
+            repoLock.release(true);
         }
     }
 
-    /** Method prints commit ID's with the same message as a given string,
-     * returns void.
-     * @param message This string is the message each commit is compared to.
+    /**
+     * Method returns the ids of the commits with part of their message
+     * matching a given regular expression. Only commits whose messages
+     * hold the literal text the expression needs are read, found through
+     * the three-character runs of the message-index.
+     * @param regex This string is the regular expression.
+     * @return the ids, newest first.
      */
-    public static void find(String message) {
-        boolean foundAny = false;
-        for (String commitFileName: plainFilenamesIn(COMMIT_HST)) {
-            File commitFile = join(COMMIT_HST, commitFileName);
-            Commit commit = readObject(commitFile, Commit.class);
-            if (commit.getMessage().equals(message)) {
-                System.out.println(commitFile.getName());
-                foundAny = true;
+    public List<String> findRegex(String regex) {
+        repoLock.acquire(true);
+        try {
+            Pattern pattern;
+            try {
+                pattern = Pattern.compile(regex);
+            } catch (PatternSyntaxException excp) {
+                throw error("Invalid regular expression.");
+            }
+            Set<String> grams = new LinkedHashSet<>();
+            for (String literal : MessageIndex.requiredLiterals(regex)) {
+                grams.addAll(MessageIndex.trigrams(
+                        MessageIndex.normalize(literal)));
             }
+            CommitMeta meta = commitMeta();
+            List<Integer> candidates = new ArrayList<>();
+            int from = 0;
+            if (!grams.isEmpty()) {
+                MessageIndex messages = messageIndex(meta);
+                for (int row : messages.rowsWithTrigrams(grams)) {
+                    candidates.add(row);
+                }
+                from = messages.covered();
+            }
+            for (int row = from; row < meta.size(); row += 1) {
+                candidates.add(row);
+            }
+            List<Integer> found = new ArrayList<>();
+            for (int row : candidates) {
+                if (pattern.matcher(meta.message(row)).find()) {
+                    found.add(row);
+                }
+            }
+            found.sort((a, b) -> Long.compare(meta.date(b), meta.date(a)));
+            return ids(meta, found);
+        } finally {
+            repoLock.release(true);
         }
-        if (!foundAny) {
-            System.out.println("Found no commit with that message.");
+    }
+
+    /** Returns the ids of the given rows of META, in order. */
+    private List<String> ids(CommitMeta meta, List<Integer> rows) {
+        List<String> result = new ArrayList<>();
+        for (int row : rows) {
+            result.add(meta.id(row));
         }
+        return result;
     }
 
     /**
      * Method creates a new branch, pointing to the current head.
      * Returns void. This method does not change which branch user is
-     * working on. Prints error message if branch with given name exists.
+     * working on. Throws an error if branch with given name exists.
      * @param branchName This string is the name of what we want to
      *                   call the new branch.
      */
-    public static void branch(String branchName) {
-        File newBranch = join(BRANCHES, branchName);
-        if (newBranch.exists()) {
-            System.out.println("A branch with that name already exists.");
-            return;
-        }
+    public void branch(String branchName) {
+        repoLock.acquire(false);
         try {
-            newBranch.createNewFile();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            File newBranch = join(branchDir, branchName);
+            if (newBranch.exists()) {
+                throw error("A branch with that name already exists.");
+            }
+            writeRef(newBranch, readObject(headBranch(), String.class));
+        } finally {
+            repoLock.release(false);
         }
-        File headBranch = readObject(HEAD, File.class);
-        writeContents(newBranch, readContents(headBranch));
     }
 
     /**
      * Method deletes the branch with the given name. Any commits
-     * under the branch should not be touched. Aborts & prints error
-     * messages if A) no branch with the given name exists and B)
+     * under the branch should not be touched. Throws an error
+     * if A) no branch with the given name exists and B)
      * the branch name passed in is the name of the current branch.
      * @param branchName This is the name of the branch we want to delete.
      */
-    public static void rmBranch(String branchName) {
-        File newBranch = join(BRANCHES, branchName);
-        if (!newBranch.exists()) {
-            System.out.println("A branch with that name does not exist.");
-            return;
-        }
-        File headBranchFile = readObject(HEAD, File.class);
-        String currBranch = readObject(headBranchFile, String.class);
-        if (branchName.equals(headBranchFile.getName())) {
-            System.out.println("Cannot remove the current branch.");
+    public void rmBranch(String branchName) {
+        repoLock.acquire(false);
+        try {
+            File newBranch = join(branchDir, branchName);
+            if (!newBranch.exists()) {
+                throw error("A branch with that name does not exist.");
+            }
+            if (branchName.equals(headBranch().getName())) {
+                throw error("Cannot remove the current branch.");
+            }
+            newBranch.delete();
+        } finally {
+            repoLock.release(false);
         }
-        newBranch.delete();
     }
 
     /**
      * Method takes in a file name. If the file is staged for addition,
-     * it is removed from the stage add file. If it is tracked in the current
+     * it is removed from the index. If it is tracked in the current
      * commit, it is removed from the current working directory, no longer
-     * gets tracked, and added in the stage for removal file. Otherwise,
-     * an error message is printed.
+     * gets tracked, and is staged for removal in the index. Otherwise,
+     * an error is thrown.
      * @param fileName This is a string of the name of the file to remove.
      */
-    public static void remove(String fileName) {
-        File toRemove = join(STAGE_ADD, fileName);
-        if (toRemove.exists()) {
-            toRemove.delete();
-            return;
-        }
-        File headBranch = readObject(HEAD, File.class);
-        String headSHA1 = readObject(headBranch, String.class);
-        File recentCommitFile = join(COMMIT_HST, headSHA1);
-        Commit currCommit = readObject(recentCommitFile, Commit.class);
-        TreeMap<String, File> trackedBlobs = currCommit.getBlobs();
+    public void remove(String fileName) {
+        repoLock.acquire(false);
+        try {
+            Index.Entry entry = index().get(fileName);
+            if (entry != null && entry.getState() == Index.ADDED) {
+                index().remove(fileName);
+                index().save();
+                return;
+            }
+            File headBranch = headBranch();
+            String headSHA1 = readObject(headBranch, String.class);
+            Commit currCommit = readCommit(headSHA1);
+            String tracked = lookup(currCommit, fileName);
 
-        if (trackedBlobs.containsKey(fileName)) {
-            File rm = join(STAGE_DEL, fileName);
-            writeObject(rm, trackedBlobs.get(fileName));
+            if (tracked != null) {
+                File toDelete = join(cwd, fileName);
+                deleteWorking(fileName);
 
-            File toDelete = join(CWD, fileName);
-            toDelete.delete();
-        } else {
-            System.out.println("No reason to remove the file.");
-        }
+                index().put(fileName, tracked, Index.REMOVED, toDelete);
+                index().save();
+            } else {
+                throw error("No reason to remove the file.");
+            }
 
+        } finally {
+            repoLock.release(false);
+        }
     }
 
     /**
-     * Method prints information about all the branches, what files
+     * Method returns information about all the branches, what files
      * are staged for addition, removal, which tracked files have been
      * modified and not staged for commit (changes in CWD of files not in
      * previous folders), and then any other non-tracked file.
-     * No files are printed if there has been no changes since the most
-     * recent commit. Takes in no parameters and returns void.
-     */
-    public static void status() {
-        File headBranch = readObject(HEAD, File.class);
-        String headBranchName = headBranch.getName();
-        System.out.println("=== Branches ===");
-        System.out.println("*" + headBranchName);
-        for (String name : plainFilenamesIn(BRANCHES)) {
-            if (name.equals("HEAD")) {
-                continue;
-            }
-            if (name.equals(headBranchName)) {
-                continue;
+     * No files are listed if there has been no changes since the most
+     * recent commit. Takes in no parameters. Only reads the repository,
+     * under the shared lock. The stat data of the files it had to read is
+     * then saved to the index if the lock can be held alone without
+     * waiting, and is otherwise dropped, as it is only a cache.
+     * @return the status of the repository.
+     */
+    public Status status() {
+        List<String> hashed = new ArrayList<>();
+        Status result;
+        repoLock.acquire(true);
+        try {
+            String headBranchName = headBranch().getName();
+            List<String> others = new ArrayList<>();
+            for (String name : plainFilenamesIn(branchDir)) {
+                if (name.equals("HEAD") || name.endsWith(".lock")) {
+                    continue;
+                }
+                if (name.equals(headBranchName)) {
+                    continue;
+                }
+                others.add(name);
             }
-            System.out.println(name);
-        }
-        ArrayList<ArrayList<String>> helper = statusHelper();
-
-        System.out.println();
-        System.out.println("=== Staged Files ===");
-        for (String n: helper.get(0)) {
-            System.out.println(n);
+            ArrayList<ArrayList<String>> helper = statusHelper(hashed);
+            result = new Status(headBranchName, others, helper.get(0),
+                    helper.get(1), helper.get(2), helper.get(3), helper.get(4));
+        } finally {
+            repoLock.release(true);
         }
-        System.out.println();
-        System.out.println("=== Removed Files ===");
-        for (String n: helper.get(1)) {
-            System.out.println(n);
-        }
-        System.out.println();
-        System.out.println("=== Modifications Not Staged For Commit ===");
-        for (String n: helper.get(2)) {
-            System.out.println(n + " (modified)");
-        }
-        for (String n: helper.get(3)) {
-            System.out.println(n + " (deleted)");
-        }
-        System.out.println();
-        System.out.println("=== Untracked Files ===");
-        for (String n: helper.get(4)) {
-            System.out.println(n);
+        if (!hashed.isEmpty() && repoLock.tryAcquire()) {
+            try {
+                Index read = index();
+                index = new Index(indexFile);
+                index.copyTracked(read, hashed);
+                index.save();
+            } finally {
+                repoLock.release(false);
+            }
         }
-        System.out.println();
+        return result;
     }
 
     /**
-     * Helper method to status, finds what file names get printed
-     * in each section of the status. Takes in no parameters.
+     * Helper method to status, finds what file names get listed
+     * in each section of the status. Files in subdirectories are
+     * listed by their path, found by walking the CWD. Takes in no
+     * parameters.
      * @return an array list of five array lists of strings. One
      * for staged, one for removed, two for modified (one for changed
      * and one for deleted), and one for untracked.
      */
-    public static ArrayList<ArrayList<String>> statusHelper() {
-        ArrayList<String> staged = new ArrayList<>();
-        ArrayList<String> removed = new ArrayList<>();
+    public ArrayList<ArrayList<String>> statusHelper() {
+        ArrayList<ArrayList<String>> toReturn =
+                statusHelper(new ArrayList<>());
+        index().save();
+        return toReturn;
+    }
+
+    /**
+     * Does the work of statusHelper, without saving the index. The names
+     * of the tracked files that had to be read and hashed, and turned out
+     * unmodified, are added to HASHED, and their stat data to the index.
+     * @param hashed This list gets the names of the files hashed.
+     * @return the five lists of statusHelper.
+     */
+    private ArrayList<ArrayList<String>> statusHelper(List<String> hashed) {
+        ArrayList<String> staged = new ArrayList<>(index().names(Index.ADDED));
+        ArrayList<String> removed =
+                new ArrayList<>(index().names(Index.REMOVED));
         ArrayList<String> modified = new ArrayList<>();
         ArrayList<String> deleted = new ArrayList<>();
         ArrayList<String> untracked = new ArrayList<>();
-        ArrayList<String> inCommitUnchanged = new ArrayList<>();
-        for (String fName : plainFilenamesIn(STAGE_ADD)) {
-            File f = join(STAGE_ADD, fName);
-            Blob b = readObject(f, Blob.class);
-            String bName = b.getFileName();
-            staged.add(bName);
-        }
-        for (String fName : plainFilenamesIn(STAGE_DEL)) {
-            File f = join(STAGE_DEL, fName);
-            removed.add(f.getName());
-        }
-        File currBranch = readObject(HEAD, File.class);
+        HashSet<String> stagedOrRemoved = new HashSet<>(staged);
+        stagedOrRemoved.addAll(removed);
+        File currBranch = headBranch();
         String commitSHA1 = readObject(currBranch, String.class);
-        File currCommitFile = join(COMMIT_HST, commitSHA1);
-        Commit currCommit = readObject(currCommitFile, Commit.class);
-        TreeMap<String, File> blobs = currCommit.getBlobs();
+        Commit currCommit = readCommit(commitSHA1);
+        TreeMap<String, String> blobs = files(currCommit);
         Set blobNames = blobs.keySet();
         for (Iterator i = blobNames.iterator(); i.hasNext(); ) {
-            String blobID = (String) i.next();
-            File blobFile = blobs.get(blobID);
-            Blob b = readObject(blobFile, Blob.class);
-            String fileName = b.getFileName();
-            if (staged.contains(fileName) || removed.contains(fileName)) {
+            String fileName = (String) i.next();
+            String blobID = blobs.get(fileName);
+            if (stagedOrRemoved.contains(fileName)) {
                 continue;
             }
-            File inCWD = join(CWD, fileName);
+            File inCWD = join(cwd, fileName);
             if (!inCWD.exists()) {
                 deleted.add(fileName);
                 continue;
             }
-            byte[] currContent = readContents(inCWD);
-            String currSHA1 = sha1(currContent);
-            if (!currSHA1.equals(b.getContentSHA1())) {
-                modified.add(fileName);
+            /** only read and hash files whose stat data changed */
+            if (!index().unchanged(fileName, blobID, inCWD)) {
+                String currSHA1 = new Blob(inCWD).getContentSHA1();
+                if (!currSHA1.equals(blobID)) {
+                    modified.add(fileName);
+                } else {
+                    remember(fileName, currSHA1, inCWD);
+                    hashed.add(fileName);
+                }
             }
-            inCommitUnchanged.add(fileName);
         }
-        for (String fName : plainFilenamesIn(CWD)) {
-            if (!modified.contains(fName) && !staged.contains(fName)
-                    && !removed.contains(fName)
-                    && !inCommitUnchanged.contains(fName)) {
+        for (String fName : walk(cwd, "")) {
+            if (!blobs.containsKey(fName)
+                    && !stagedOrRemoved.contains(fName)) {
                 untracked.add(fName);
             }
         }
@@ -662,205 +1171,146 @@ public class Repository {
      * @param commitID This string is either the full or abbreviated
      *                 commit ID to check out.
      */
-    public static void reset(String commitID) {
-        if (commitID.length() < 10) {
-            for (File f: COMMIT_HST.listFiles()) {
-                String prevCommitID = f.getName();
-                if (prevCommitID.startsWith(commitID)) {
-                    commitID = prevCommitID;
-                }
-            }
-        }
-        File commitFile = new File(COMMIT_HST, commitID);
-        if (!commitFile.exists()) {
-            System.out.println("No commit with that id exists.");
-            return;
-        }
-        File currBranch = readObject(HEAD, File.class);
-        File tempBranch = join(BRANCHES, "temp");
-        writeObject(tempBranch, commitID);
-        checkoutBranch(tempBranch.getName());
-        tempBranch.delete();
-        writeObject(currBranch, commitID);
-        writeObject(HEAD, currBranch);
-    }
-
-    /** Main method of merge,this part checks for fail cases
-     * and call mergePart2 to find the common ancestor.
-     * @param otherBranch is the given branch to merge with. */
-    public static void merge(String otherBranch) {
-        if (STAGE_ADD.listFiles().length != 0
-                || STAGE_DEL.listFiles().length != 0) {
-            System.out.println("You have uncommitted changes.");
-            return;
-        }
-        File otherBranchFile = join(BRANCHES, otherBranch);
-        if (!otherBranchFile.exists()) {
-            System.out.println("A branch with that name does not exist.");
-            return;
-        }
-        File currBranchFile = readObject(HEAD, File.class);
-        if (currBranchFile.getName().equals(otherBranch)) {
-            System.out.println("Cannot merge a branch with itself.");
-            return;
+    public void reset(String commitID) {
+        repoLock.acquire(false);
+        try {
+            commitID = resolveCommit(commitID);
+            checkoutCommit(commitID);
+            writeRef(headBranch(), commitID);
+        } finally {
+            repoLock.release(false);
         }
-        String otherCommitID = readObject(otherBranchFile, String.class);
-        File otherCommitFile = join(COMMIT_HST, otherCommitID);
-        Commit otherCommit = readObject(otherCommitFile, Commit.class);
-        TreeMap<String, File> otherBlobs = otherCommit.getBlobs();
-        String currCommitID = readObject(currBranchFile, String.class);
-        File currCommitFile = join(COMMIT_HST, currCommitID);
-        Commit currCommit = readObject(currCommitFile, Commit.class);
-        TreeMap<String, File> currBlobs = currCommit.getBlobs();
-        Set otherNames = otherBlobs.keySet();
-        for (Iterator i = otherNames.iterator(); i.hasNext(); ) {
-            String fileName = (String) i.next();
-            if (!currBlobs.containsKey(fileName)) {
-                File fileInCWD = join(CWD, fileName);
-                if (fileInCWD.exists()) {
-                    System.out.println("There is an untracked file in the way;"
-                            + " delete it, or add and commit it first.");
-                    return;
+    }
+
+    /** Main method of merge,this part checks for fail cases, throwing
+     * an error for each, and call mergePart2 to find the common ancestor.
+     * @param otherBranch is the given branch to merge with.
+     * @return ALREADY_MERGED, FAST_FORWARDED, MERGED or MERGE_CONFLICT. */
+    public int merge(String otherBranch) {
+        repoLock.acquire(false);
+        try {
+            if (index().hasStaged()) {
+                throw error("You have uncommitted changes.");
+            }
+            File otherBranchFile = join(branchDir, otherBranch);
+            if (!otherBranchFile.exists()) {
+                throw error("A branch with that name does not exist.");
+            }
+            File currBranchFile = headBranch();
+            if (currBranchFile.getName().equals(otherBranch)) {
+                throw error("Cannot merge a branch with itself.");
+            }
+            String otherCommitID = readObject(otherBranchFile, String.class);
+            Commit otherCommit = readCommit(otherCommitID);
+            TreeMap<String, String> otherBlobs = files(otherCommit);
+            String currCommitID = readObject(currBranchFile, String.class);
+            Commit currCommit = readCommit(currCommitID);
+            TreeMap<String, String> currBlobs = files(currCommit);
+            Set otherNames = otherBlobs.keySet();
+            for (Iterator i = otherNames.iterator(); i.hasNext(); ) {
+                String fileName = (String) i.next();
+                if (!currBlobs.containsKey(fileName)) {
+                    File fileInCWD = join(cwd, fileName);
+                    if (fileInCWD.exists()
+                            && !ignore().ignored(fileName, false)) {
+                        throw error("There is an untracked file in the way;"
+                                + " delete it, or add and commit it first.");
+                    }
                 }
             }
+            return mergePart2(currBranchFile.getName(), otherBranch);
+        } finally {
+            repoLock.release(false);
         }
-        mergePart2(currBranchFile.getName(), otherBranch);
     }
 
-    /** Merge helper: this part finds the parent.
+    /** Merge helper: this part finds the parent, the split point of
+     * the two branches, using the commit-graph.
      * @param otherBranch is the given branch
-     * @param currBranch is the current branch. */
-    public static void mergePart2(String currBranch, String otherBranch) {
-        File currBranchFile = join(BRANCHES, currBranch);
+     * @param currBranch is the current branch.
+     * @return ALREADY_MERGED, FAST_FORWARDED, MERGED or MERGE_CONFLICT. */
+    public int mergePart2(String currBranch, String otherBranch) {
+        File currBranchFile = join(branchDir, currBranch);
         String currCommitID = readObject(currBranchFile, String.class);
-        File currCommitFile = join(COMMIT_HST, currCommitID);
-        Commit currCommit = readObject(currCommitFile, Commit.class);
+        Commit currCommit = readCommit(currCommitID);
 
-        File otherBranchFile = join(BRANCHES, otherBranch);
+        File otherBranchFile = join(branchDir, otherBranch);
         String otherCommitID = readObject(otherBranchFile, String.class);
-        File otherCommitFile = join(COMMIT_HST, otherCommitID);
-        Commit otherCommit = readObject(otherCommitFile, Commit.class);
-
-        ArrayList<String> currParents = new ArrayList<String>();
-        ArrayList<String> otherParents = new ArrayList<String>();
-        currParents.add(currCommitID);
-        otherParents.add(otherCommitID);
-
-        Commit currPointer = currCommit;
-        while (!currPointer.getMessage().equals("initial commit")) {
-            File parentCommitFile = join(COMMIT_HST,
-                    currPointer.getParentHash());
-            currParents.add(currPointer.getParentHash());
-            if (currPointer.getSecondParentHash() != null) {
-                currParents.add(currPointer.getSecondParentHash());
-            }
-            currPointer = readObject(parentCommitFile, Commit.class);
-        }
-        Commit otherPointer = otherCommit;
-        while (!otherPointer.getMessage().equals("initial commit")) {
-            File parentCommitFile = join(COMMIT_HST,
-                    otherPointer.getParentHash());
-            otherParents.add(otherPointer.getParentHash());
-            if (otherPointer.getSecondParentHash() != null) {
-                otherParents.add(otherPointer.getSecondParentHash());
-            }
-            otherPointer = readObject(parentCommitFile, Commit.class);
-        }
-        Commit parentCommit = null;
-        for (String n: currParents) {
-            if (otherParents.contains(n)) {
-                File parentCommitFile = join(COMMIT_HST, n);
-                Commit otherParentCommit = readObject(parentCommitFile, Commit.class);
-                if (parentCommit != null) {
-                    int comparison = parentCommit.getTimeStamp().compareTo(
-                            otherParentCommit.getTimeStamp());
-                    if (comparison > 0) {
-                        continue;
-                    }
-                }
-                parentCommit = otherParentCommit;
-            }
-        }
-        if (parentCommit.equals(otherCommit)) {
-            System.out.println("Given branch is an "
-                    +
-                    "ancestor of the current branch.");
-            return;
+        Commit otherCommit = readCommit(otherCommitID);
+
+        String parentCommitID = mergeBase(currCommitID, otherCommitID);
+        if (parentCommitID.equals(otherCommitID)) {
+            return ALREADY_MERGED;
         }
-        if (parentCommit.equals(currCommit)) {
+        if (parentCommitID.equals(currCommitID)) {
             checkoutBranch(otherBranch);
-            System.out.println("Current branch fast-forwarded.");
-            return;
+            return FAST_FORWARDED;
         }
-        mergePart3(parentCommit, currCommit, otherCommit);
+        Commit parentCommit = readCommit(parentCommitID);
         boolean mergeConflict = mergePart3(parentCommit,
                 currCommit, otherCommit);
         String commitMessage = "Merged " + otherBranch
                 + " into " + currBranch + ".";
         commit(commitMessage, otherCommitID);
-        File newHeadBranchFile = readObject(HEAD, File.class);
-        String newCommitID = readObject(newHeadBranchFile, String.class);
-        File newCommitFile = join(COMMIT_HST, newCommitID);
-        Commit newCommit = readObject(newCommitFile, Commit.class);
-        newCommit.setSecondParentHash(otherCommitID);
         if (mergeConflict) {
-            System.out.println("Encountered a merge conflict.");
+            return MERGE_CONFLICT;
         }
+        return MERGED;
     }
 
-    /** merge helper: this part gets all versions of the files.
+    /** merge helper: this part gets all versions of the files that
+     * changed since the split point on either side. Directories with
+     * the same tree on a side as at the split point are skipped without
+     * being read; a file unchanged on one side has its split point
+     * version on that side.
      * @param parent is the split point commit
      * @param current is the commit we are currently on
      * @param other is the commit from the otherBranch.
      * @return a boolean that returns the result of calling merge4. */
-    public static boolean mergePart3(Commit parent, Commit current,
+    public boolean mergePart3(Commit parent, Commit current,
                                      Commit other) {
+        TreeMap<String, String[]> currChanges = new TreeMap<>();
+        diffTrees(parent.getTree(), current.getTree(), "", currChanges);
+        TreeMap<String, String[]> otherChanges = new TreeMap<>();
+        diffTrees(parent.getTree(), other.getTree(), "", otherChanges);
         HashMap<String, Blob[]> fileVersions = new HashMap<>();
-        TreeMap<String, File> parentBlobs = parent.getBlobs();
-        TreeMap<String, File> currBlobs = current.getBlobs();
-        TreeMap<String, File> otherBlobs = other.getBlobs();
-        Set<String> parentFiles = parentBlobs.keySet();
-        for (Iterator i = parentFiles.iterator(); i.hasNext();) {
-            String fileName = (String) i.next();
-            File pBlobFile = parentBlobs.get(fileName);
-            Blob pBlob = readObject(pBlobFile, Blob.class);
-            Blob[] blobs = {pBlob, null, null};
-            fileVersions.put(fileName, blobs);
+        for (Map.Entry<String, String[]> e : currChanges.entrySet()) {
+            String[] ids = e.getValue();
+            String[] otherIDs = otherChanges.get(e.getKey());
+            String otherID = ids[0];
+            if (otherIDs != null) {
+                otherID = otherIDs[1];
+            }
+            fileVersions.put(e.getKey(), versions(ids[0], ids[1], otherID));
         }
-        Set<String> currFiles = currBlobs.keySet();
-        for (Iterator i = currFiles.iterator(); i.hasNext();) {
-            String fileName = (String) i.next();
-            File cBlobFile = currBlobs.get(fileName);
-            Blob cBlob = readObject(cBlobFile, Blob.class);
-            if (fileVersions.containsKey(fileName)) {
-                Blob[] blobs = fileVersions.get(fileName);
-                blobs[1] = cBlob;
-            } else {
-                Blob[] blobs = {null, cBlob, null};
-                fileVersions.put(fileName, blobs);
+        for (Map.Entry<String, String[]> e : otherChanges.entrySet()) {
+            String[] ids = e.getValue();
+            if (!currChanges.containsKey(e.getKey())) {
+                fileVersions.put(e.getKey(), versions(ids[0], ids[0], ids[1]));
             }
         }
-        Set<String> otherFiles = otherBlobs.keySet();
-        for (Iterator i = otherFiles.iterator(); i.hasNext();) {
-            String fileName = (String) i.next();
-            File oBlobFile = otherBlobs.get(fileName);
-            Blob oBlob = readObject(oBlobFile, Blob.class);
-            if (fileVersions.containsKey(fileName)) {
-                Blob[] blobs = fileVersions.get(fileName);
-                blobs[2] = oBlob;
-            } else {
-                Blob[] blobs = {null, null, oBlob};
-                fileVersions.put(fileName, blobs);
+        return mergePart4(fileVersions);
+    }
+
+    /** Merge helper: returns the blobs with the given ids, in order, with
+     * null for a file missing from a commit.
+     * @param ids are the blob ids of the split point, current and other
+     *            versions of a file, or null. */
+    private static Blob[] versions(String... ids) {
+        Blob[] blobs = new Blob[ids.length];
+        for (int i = 0; i < ids.length; i += 1) {
+            if (ids[i] != null) {
+                blobs[i] = new Blob(ids[i]);
             }
         }
-        return mergePart4(fileVersions);
+        return blobs;
     }
 
     /** Merge helper: checks all the merging rules and perform merging.
      * @param fileVersions is a hashmap that stores split point, current,
      * and parent blob contents.
      * @return returns a boolean, true if there's a merge conflict. */
-    public static boolean mergePart4(HashMap<String, Blob[]> fileVersions) {
+    public boolean mergePart4(HashMap<String, Blob[]> fileVersions) {
         boolean mergeConflict = false;
         Set<String> fileNames = fileVersions.keySet();
         for (Iterator i = fileNames.iterator(); i.hasNext();) {
@@ -875,7 +1325,7 @@ public class Repository {
                     continue;
                 } else if (cBlob == null) {
                     // rule 5
-                    writeAndStage(oBlob);
+                    writeAndStage(fileName, oBlob);
                     continue;
                 }
                 // rule 3b if no parents
@@ -897,7 +1347,7 @@ public class Repository {
                         // rule 1 (parent and head same)
                         if (pBlob.getContentSHA1().equals(
                                 cBlob.getContentSHA1())) {
-                            writeAndStage(oBlob);
+                            writeAndStage(fileName, oBlob);
                             continue;
                         }
                         // rule 3a (other and head are the same, modified or not)
@@ -937,39 +1387,964 @@ public class Repository {
     /**
      * Helper method: writes the passed in blob into the CWD and
      * Stages the file for addition without calling add(). Returns void.
+     * @param fileName This is the name of the file in the CWD.
      * @param newBlob This is the blob of the contents we want to rewrite
      *                into the file in the CWD.
      */
-    private static void writeAndStage(Blob newBlob) {
-        String fileName = newBlob.getFileName();
-        File inCWD = join(CWD, fileName);
-        writeContents(inCWD, newBlob.getContent());
-        Blob toStage = new Blob(inCWD);
-        File stageFile = join(STAGE_ADD, fileName);
-        writeObject(stageFile, toStage);
+    private void writeAndStage(String fileName, Blob newBlob) {
+        File inCWD = join(cwd, fileName);
+        copyBlob(newBlob.getContentSHA1(), inCWD);
+        index().put(fileName, newBlob.getContentSHA1(), Index.ADDED, inCWD);
     }
 
     /** Merge helper: deals with merge conflict and
-     * print header and divider.
+     * print header and divider. The two versions are streamed into the
+     * file in the CWD, which is then stored and staged.
      * @param fileName is the fileName
      * @param cBlob is the current blob
      * @param oBlob is the other blob.*/
-    public static void mergePart5(String fileName, Blob cBlob, Blob oBlob) {
+    public void mergePart5(String fileName, Blob cBlob, Blob oBlob) {
         String headline = "<<<<<<< HEAD\n";
         String divider = "=======\n";
         String end = ">>>>>>>\n";
-        byte[] currContent = new byte[] {};
-        byte[] otherContent = new byte[] {};
+        File inCWD = join(cwd, fileName);
+        try (OutputStream out = new BufferedOutputStream(
+                createWorking(inCWD))) {
+            out.write(headline.getBytes(StandardCharsets.UTF_8));
+            if (cBlob != null) {
+                copyBlob(cBlob.getContentSHA1(), out);
+            }
+            out.write(divider.getBytes(StandardCharsets.UTF_8));
+            if (oBlob != null) {
+                copyBlob(oBlob.getContentSHA1(), out);
+            }
+            out.write(end.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        String base = null;
         if (cBlob != null) {
-            currContent = cBlob.getContent();
+            base = cBlob.getContentSHA1();
+        }
+        String blobSHA1 = storeBlob(inCWD, base);
+        index().put(fileName, blobSHA1, Index.ADDED, inCWD);
+    }
+
+    /**
+     * Moves every loose commit, tree and blob into a single new pack in the
+     * packDir directory, then deletes the loose files. Blobs of 2 GB or
+     * more stay loose. Does nothing if there are no loose objects.
+     * Returns void.
+     */
+    public void repack() {
+        repoLock.acquire(false);
+        try {
+            List<File> commits = new ArrayList<>();
+            for (String name : plainFilenamesIn(commitDir)) {
+                commits.add(join(commitDir, name));
+            }
+            List<File> trees = new ArrayList<>();
+            for (String name : plainFilenamesIn(treeDir)) {
+                trees.add(join(treeDir, name));
+            }
+            List<File> blobs = new ArrayList<>();
+            for (String name : plainFilenamesIn(blobDir)) {
+                File blob = join(blobDir, name);
+                if (blob.length() <= Integer.MAX_VALUE) {
+                    blobs.add(blob);
+                }
+            }
+            if (commits.isEmpty() && trees.isEmpty() && blobs.isEmpty()) {
+                return;
+            }
+            Pack.write(packDir, commits, trees, blobs);
+            for (List<File> loose : List.of(commits, trees, blobs)) {
+                for (File f : loose) {
+                    f.delete();
+                }
+            }
+            packs = null;
+        } finally {
+            repoLock.release(false);
+        }
+    }
+
+    /** Returns the packs in the packDir directory, opening them on first use. */
+    private List<Pack> packs() {
+        if (packs == null) {
+            packs = Pack.openAll(packDir);
+        }
+        return packs;
+    }
+
+    /**
+     * Returns the stored bytes of the object with the given id, looking
+     * in the packs first and then for a loose file in DIR. Returns null
+     * if neither holds the object.
+     * @param dir is the directory loose objects of this type live in.
+     * @param id is the full id of the object.
+     */
+    private byte[] readStored(File dir, String id) {
+        for (Pack pack : packs()) {
+            byte[] bytes = pack.read(id);
+            if (bytes != null) {
+                return bytes;
+            }
+        }
+        File loose = join(dir, id);
+        if (loose.isFile()) {
+            return readContents(loose);
+        }
+        /* a repack by another process may have moved the object into a
+         * pack opened since, and packs are never removed */
+        int opened = packs().size();
+        packs = null;
+        if (packs().size() > opened) {
+            return readStored(dir, id);
+        }
+        return null;
+    }
+
+    /** Getter method for the cache of decoded commits, returns
+     * commitCache. */
+    public LruCache<String, Commit> getCommitCache() {
+        return commitCache;
+    }
+
+    /** Getter method for the cache of decoded trees, returns treeCache. */
+    public LruCache<String, Tree> getTreeCache() {
+        return treeCache;
+    }
+
+    /** Getter method for the cache of blob headers, returns
+     * blobHeaderCache. */
+    public LruCache<String, long[]> getBlobHeaderCache() {
+        return blobHeaderCache;
+    }
+
+    /**
+     * Returns the commit with the given full id, whether it is packed
+     * or loose, decoding it only if it is not in commitCache. Throws a
+     * GitletException if there is no such commit. The commit is shared
+     * through the cache and must not be modified.
+     * @param commitID This is the full id of the commit.
+     */
+    private Commit readCommit(String commitID) {
+        return commitCache.get(commitID, id -> {
+            byte[] bytes = readStored(commitDir, id);
+            if (bytes == null) {
+                throw error("No commit with that id exists.");
+            }
+            return Commit.decode(inflate(bytes));
+        });
+    }
+
+    /** Returns the tree with the given id, whether it is packed or loose,
+     * decoding it only if it is not in treeCache. The tree is shared
+     * through the cache and must not be modified.
+     * @param treeID This is the id of the tree. */
+    private Tree readTree(String treeID) {
+        return treeCache.get(treeID, id -> {
+            byte[] bytes = readStored(treeDir, id);
+            if (bytes == null) {
+                throw error("No tree with id %s exists.", id);
+            }
+            return Tree.decode(inflate(bytes));
+        });
+    }
+
+    /** Stores TREE in the treeStorage directory unless an identical tree
+     * is already stored, and returns its id.
+     * @param tree This is the tree to store. */
+    private String writeTree(Tree tree) {
+        byte[] encoded = tree.encode();
+        String treeID = sha1(encoded);
+        if (!hasObject(treeDir, treeID)) {
+            storeObject(treeDir, treeID, encoded);
+        }
+        return treeID;
+    }
+
+    /**
+     * Stores the commit or tree ENCODED with the given id as a loose file
+     * in DIR. It is written compressed to a temporary file first, and
+     * renamed into place, so no reader sees part of an object.
+     * @param dir is the directory loose objects of this type live in.
+     * @param id is the id of the object.
+     * @param encoded is the encoded object.
+     */
+    private void storeObject(File dir, String id, byte[] encoded) {
+        File tmp = tempFile();
+        writeCompressed(tmp, encoded);
+        moveIntoStorage(tmp, dir, id);
+    }
+
+    /**
+     * Writes VALUE to REF, HEAD or a branch file. It is written to a lock
+     * file beside REF first, created only if no such file exists, and
+     * renamed onto REF, so two processes never update one ref at once and
+     * readers see its old value or its new one, never part of either.
+     * Throws an error if the lock file exists, as it does while another
+     * process updates REF, or after one failed to.
+     * @param ref is the ref to write.
+     * @param value is its new value.
+     */
+    private void writeRef(File ref, Serializable value) {
+        File lock = new File(ref.getPath() + ".lock");
+        try {
+            Files.write(lock.toPath(), serialize(value),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (FileAlreadyExistsException excp) {
+            throw error("Unable to create %s: another gitlet process may be"
+                    + " running. If not, remove the file and try again.",
+                    lock.getPath());
+        } catch (IOException excp) {
+            lock.delete();
+            throw new IllegalArgumentException(excp);
+        }
+        replace(lock, ref);
+    }
+
+    /** Returns the blob id of every file tracked by COMMIT, by path.
+     * @param commit This is the commit. */
+    private TreeMap<String, String> files(Commit commit) {
+        TreeMap<String, String> result = new TreeMap<>();
+        addFiles(commit.getTree(), "", result);
+        return result;
+    }
+
+    /**
+     * Returns the blob id of the file at PATH in COMMIT, or null if the
+     * commit does not track it. Only the trees of the directories on the
+     * way to the file are read.
+     * @param commit This is the commit.
+     * @param path This is the path of the file, split by slashes.
+     */
+    private String lookup(Commit commit, String path) {
+        Tree tree = readTree(commit.getTree());
+        String[] parts = path.split("/");
+        for (int i = 0; i < parts.length - 1; i += 1) {
+            String sub = tree.getDirs().get(parts[i]);
+            if (sub == null) {
+                return null;
+            }
+            tree = readTree(sub);
+        }
+        return tree.getFiles().get(parts[parts.length - 1]);
+    }
+
+    /** Adds the blob id of every file under the tree with the given id
+     * to RESULT, by its path with PREFIX in front. Returns void.
+     * @param treeID This is the id of the tree.
+     * @param prefix This is the path of the tree's directory, ending in
+     *               a slash, or the empty string for the root.
+     * @param result This is the map to add to. */
+    private void addFiles(String treeID, String prefix,
+                          TreeMap<String, String> result) {
+        Tree tree = readTree(treeID);
+        for (Map.Entry<String, String> e : tree.getFiles().entrySet()) {
+            result.put(prefix + e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, String> e : tree.getDirs().entrySet()) {
+            addFiles(e.getValue(), prefix + e.getKey() + "/", result);
+        }
+    }
+
+    /**
+     * Returns a copy of the tree with the given id with CHANGES applied.
+     * CHANGES maps paths relative to the tree to the id of their new
+     * blob, or to null for files to drop. Subtrees with changes in them
+     * are updated recursively and stored, or dropped once empty; all
+     * other subtrees are kept as they are, by id, without being read.
+     * @param treeID This is the id of the tree, or null for a directory
+     *               that does not exist yet.
+     * @param changes This is the map of changes.
+     */
+    private Tree updateTree(String treeID, Map<String, String> changes) {
+        Tree tree = new Tree();
+        if (treeID != null) {
+            /* the stored tree is shared through treeCache, so the
+             * changes are made to a copy */
+            Tree stored = readTree(treeID);
+            tree.getFiles().putAll(stored.getFiles());
+            tree.getDirs().putAll(stored.getDirs());
+        }
+        TreeMap<String, TreeMap<String, String>> byDir = new TreeMap<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            String path = e.getKey();
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                byDir.computeIfAbsent(path.substring(0, slash),
+                        k -> new TreeMap<>()).put(path.substring(slash + 1),
+                        e.getValue());
+            } else if (e.getValue() == null) {
+                tree.getFiles().remove(path);
+            } else {
+                tree.getFiles().put(path, e.getValue());
+            }
+        }
+        for (Map.Entry<String, TreeMap<String, String>> e : byDir.entrySet()) {
+            String dir = e.getKey();
+            Tree sub = updateTree(tree.getDirs().get(dir), e.getValue());
+            if (sub.isEmpty()) {
+                tree.getDirs().remove(dir);
+            } else {
+                tree.getDirs().put(dir, writeTree(sub));
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Adds to DIFF every file under the two trees with the given ids
+     * whose blob differs between them, mapped by its path (with PREFIX
+     * in front) to its blob id in each tree, null where it is missing.
+     * Subtrees with the same id in both are skipped without being read.
+     * Returns void.
+     * @param first This is the id of one tree, or null if missing.
+     * @param second This is the id of the other tree, or null if missing.
+     * @param prefix This is the path of the trees' directory, ending in
+     *               a slash, or the empty string for the root.
+     * @param diff This is the map to add to.
+     */
+    private void diffTrees(String first, String second, String prefix,
+                           TreeMap<String, String[]> diff) {
+        if (Objects.equals(first, second)) {
+            return;
+        }
+        Tree a = new Tree();
+        if (first != null) {
+            a = readTree(first);
+        }
+        Tree b = new Tree();
+        if (second != null) {
+            b = readTree(second);
+        }
+        TreeSet<String> names = new TreeSet<>(a.getFiles().keySet());
+        names.addAll(b.getFiles().keySet());
+        for (String name : names) {
+            String aID = a.getFiles().get(name);
+            String bID = b.getFiles().get(name);
+            if (!Objects.equals(aID, bID)) {
+                diff.put(prefix + name, new String[] {aID, bID});
+            }
+        }
+        TreeSet<String> dirs = new TreeSet<>(a.getDirs().keySet());
+        dirs.addAll(b.getDirs().keySet());
+        for (String dir : dirs) {
+            diffTrees(a.getDirs().get(dir), b.getDirs().get(dir),
+                    prefix + dir + "/", diff);
+        }
+    }
+
+    /**
+     * Returns a stream of the stored bytes of the object with the given
+     * id, looking in the packs first and then for a loose file in DIR.
+     * Returns null if neither holds the object.
+     * @param dir is the directory loose objects of this type live in.
+     * @param id is the full id of the object.
+     */
+    private InputStream openStored(File dir, String id) {
+        for (Pack pack : packs()) {
+            InputStream in = pack.open(id);
+            if (in != null) {
+                return in;
+            }
+        }
+        File loose = join(dir, id);
+        if (!loose.isFile()) {
+            return null;
+        }
+        try {
+            return Files.newInputStream(loose.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /**
+     * Returns the stored blob with the given id, inflated and positioned
+     * at its kind byte. Throws a GitletException if there is no such blob.
+     * @param blobID This is the id of the blob.
+     */
+    private DataInputStream openStoredBlob(String blobID) {
+        InputStream stored = openStored(blobDir, blobID);
+        if (stored == null) {
+            throw error("No blob with id %s exists.", blobID);
+        }
+        return Blob.open(stored);
+    }
+
+    /**
+     * Returns a stream of the contents of the blob with the given id.
+     * A blob stored in full is streamed straight out of storage, and one
+     * stored in chunks is streamed out a chunk at a time. One stored as a
+     * Delta is small, and is rebuilt in memory from its base, which is
+     * read recursively.
+     * @param blobID This is the id of the blob.
+     */
+    private InputStream openBlob(String blobID) {
+        File raw = join(rawDir, blobID);
+        if (raw.isFile()) {
+            try {
+                return Files.newInputStream(raw.toPath());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+        }
+        DataInputStream in = openStoredBlob(blobID);
+        try {
+            int kind = in.readByte();
+            in.readLong();
+            if (kind == Blob.DELTA) {
+                Delta delta = Delta.read(in);
+                in.close();
+                byte[] base = readBlobContent(delta.getBaseID());
+                return new ByteArrayInputStream(
+                        Delta.apply(base, delta.getInstructions()));
+            } else if (kind == Blob.CHUNKED) {
+                return Blob.openChunks(in, this::openBlob);
+            }
+            return in;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns the whole contents of the blob with the given id, which
+     *  should be at most Blob.IN_MEMORY_LIMIT bytes.
+     * @param blobID This is the id of the blob. */
+    private byte[] readBlobContent(String blobID) {
+        try (InputStream in = openBlob(blobID)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /**
+     * Returns the size of the contents of the blob with the given id,
+     * and its depth in a chain of deltas, 0 if it is stored in full.
+     * Only reads the blob if it is not in blobHeaderCache.
+     * @param blobID This is the id of the blob.
+     */
+    private long[] blobHeader(String blobID) {
+        return blobHeaderCache.get(blobID, id -> {
+            File raw = join(rawDir, id);
+            if (raw.isFile()) {
+                return new long[] {raw.length(), 0};
+            }
+            try (DataInputStream in = openStoredBlob(id)) {
+                int kind = in.readByte();
+                long size = in.readLong();
+                int depth = 0;
+                if (kind == Blob.DELTA) {
+                    depth = Delta.read(in).getDepth();
+                }
+                return new long[] {size, depth};
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+        });
+    }
+
+    /**
+     * Writes the contents of the blob with the given id to the file
+     * TARGET, a buffer at a time. A blob stored raw is copied with
+     * FileChannel.transferTo instead, or linked to if checkoutLinks is
+     * on. Returns void.
+     * @param blobID This is the id of the blob.
+     * @param target This is the file to write.
+     */
+    private void copyBlob(String blobID, File target) {
+        File raw = join(rawDir, blobID);
+        if (raw.isFile()) {
+            copyRaw(raw, target);
+            return;
+        }
+        try (OutputStream out = createWorking(target)) {
+            copyBlob(blobID, out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /**
+     * Makes TARGET a hard link to the raw blob RAW if checkoutLinks is on
+     * and a link can be made, and otherwise copies RAW to TARGET with
+     * FileChannel.transferTo. Returns void.
+     * @param raw This is the file of the blob in rawStorage.
+     * @param target This is the file to write.
+     */
+    private void copyRaw(File raw, File target) {
+        try {
+            if (checkoutLinks) {
+                Files.deleteIfExists(target.toPath());
+                try {
+                    Files.createLink(target.toPath(), raw.toPath());
+                    return;
+                } catch (IOException | UnsupportedOperationException excp) {
+                    /* copy it instead */
+                }
+            }
+            try (FileChannel in = FileChannel.open(raw.toPath(),
+                    StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(createWorkingPath(target),
+                         StandardOpenOption.WRITE)) {
+                long size = in.size();
+                for (long done = 0; done < size;) {
+                    done += in.transferTo(done, size - done, out);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /**
+     * Returns a stream writing the working file TARGET. Whatever is at
+     * TARGET is removed first, rather than written over, since it may be
+     * a link to a blob in rawStorage.
+     * @param target This is the file to write.
+     */
+    private OutputStream createWorking(File target) throws IOException {
+        return Files.newOutputStream(createWorkingPath(target),
+                StandardOpenOption.WRITE);
+    }
+
+    /** Removes whatever is at the working file TARGET, then creates it
+     *  empty, along with any missing directories above it, and returns
+     *  its path.
+     * @param target This is the file to create. */
+    private Path createWorkingPath(File target)
+            throws IOException {
+        Files.deleteIfExists(target.toPath());
+        Files.createDirectories(target.toPath().getParent());
+        return Files.createFile(target.toPath());
+    }
+
+    /** Deletes the working file with the given name, then each directory
+     *  above it that is left empty, up to the CWD. Returns void.
+     * @param fileName This is the path of the file, relative to the CWD. */
+    private void deleteWorking(String fileName) {
+        File file = join(cwd, fileName);
+        file.delete();
+        for (File dir = file.getParentFile();
+             dir != null && !dir.equals(cwd) && dir.delete();
+             dir = dir.getParentFile()) {
+            continue;
+        }
+    }
+
+    /** Returns the paths, relative to the CWD, of the files under DIR,
+     *  sorted, without those the .gitletignore file ignores. Ignored
+     *  directories are not read.
+     * @param dir This is the directory to walk.
+     * @param prefix This is the path of DIR relative to the CWD, ending
+     *               in a slash, or the empty string for the CWD. */
+    private List<String> walk(File dir, String prefix) {
+        Ignore rules = ignore();
+        return new Walker((path, directory) -> !rules.ignored(path, directory))
+                .walk(dir, prefix);
+    }
+
+    /** Returns the path of FILE relative to the CWD, with / between
+     *  names, or the empty string for the CWD itself.
+     * @param file This is a file in the CWD. */
+    private String relativePath(File file) {
+        return cwd.toPath().toAbsolutePath().normalize()
+                .relativize(file.toPath().toAbsolutePath().normalize())
+                .toString().replace(File.separatorChar, '/');
+    }
+
+    /** Writes the contents of the blob with the given id to OUT, a
+     *  buffer at a time. Returns void.
+     * @param blobID This is the id of the blob.
+     * @param out This is the stream to write to. */
+    private void copyBlob(String blobID, OutputStream out) throws IOException {
+        try (InputStream in = openBlob(blobID)) {
+            in.transferTo(out);
+        }
+    }
+
+    /**
+     * Stores the contents of the file SOURCE in the blobStorage directory
+     * unless a blob with the same contents is already stored, and returns
+     * the blob's id. Files of at most Blob.IN_MEMORY_LIMIT bytes are read
+     * whole and passed to writeBlob. Larger ones are streamed through a
+     * Chunker and hashed in the same pass: each chunk is stored as a blob
+     * of its own unless an identical chunk, of this or any other file, is
+     * already stored, and the blob itself only lists the chunks. Memory
+     * use does not grow with the size of the file.
+     * @param source This is the file to store.
+     * @param base This is the blob id of the previous version of the
+     *             file, or null. Passed on to writeBlob.
+     */
+    private String storeBlob(File source, String base) {
+        long size = source.length();
+        if (size <= Blob.IN_MEMORY_LIMIT) {
+            byte[] content = readContents(source);
+            String blobID = sha1(content);
+            if (!hasBlob(blobID)) {
+                writeBlob(blobID, content, base);
+            }
+            return blobID;
+        }
+        File tmp = tempFile();
+        String blobID;
+        try (InputStream in = Files.newInputStream(source.toPath())) {
+            if (rawBlobs) {
+                blobID = Blob.writeRaw(in, size, tmp);
+            } else {
+                blobID = Blob.writeChunked(in, size, tmp, this::storeChunk);
+            }
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp);
+        }
+        if (hasBlob(blobID)) {
+            tmp.delete();
+        } else if (rawBlobs) {
+            rawDir.mkdir();
+            tmp.setReadOnly();
+            replace(tmp, join(rawDir, blobID));
+        } else {
+            moveIntoStorage(tmp, blobDir, blobID);
+        }
+        return blobID;
+    }
+
+    /**
+     * Stores a blob with the given id and CONTENT in the blobStorage
+     * directory. If BASE, the previous version of the same file, is given
+     * and the two are similar enough, only a Delta against BASE is stored,
+     * as long as BASE is small enough to read whole and the chain of
+     * deltas stays within Delta.MAX_DEPTH. Returns void.
+     * @param blobID This is the id of the blob.
+     * @param content This is the contents of the blob.
+     * @param base This is the blob id of the previous version, or null.
+     */
+    private void writeBlob(String blobID, byte[] content, String base) {
+        File tmp = tempFile();
+        if (base != null && !base.equals(blobID)) {
+            long[] header = blobHeader(base);
+            int depth = (int) header[1] + 1;
+            if (header[0] <= Blob.IN_MEMORY_LIMIT && depth <= Delta.MAX_DEPTH) {
+                byte[] instructions = Delta.encode(
+                        readBlobContent(base), content);
+                if (instructions.length < content.length / 2) {
+                    Blob.write(new Delta(base, depth, instructions),
+                            content.length, tmp);
+                    moveIntoStorage(tmp, blobDir, blobID);
+                    return;
+                }
+            }
+        }
+        Blob.write(new ByteArrayInputStream(content), content.length, tmp);
+        moveIntoStorage(tmp, blobDir, blobID);
+    }
+
+    /** Stores CHUNK as a blob unless it is already stored, and returns
+     *  its id.
+     * @param chunk This is the contents of the chunk. */
+    private String storeChunk(byte[] chunk) {
+        String chunkID = sha1(chunk);
+        if (!hasObject(blobDir, chunkID)) {
+            File tmp = tempFile();
+            Blob.write(new ByteArrayInputStream(chunk), chunk.length, tmp);
+            moveIntoStorage(tmp, blobDir, chunkID);
+        }
+        return chunkID;
+    }
+
+    /** Returns a new, empty temporary file in the .gitlet directory. */
+    private File tempFile() {
+        try {
+            return File.createTempFile("object", ".tmp", gitletDir);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /**
+     * Renames the temporary file TMP, holding the stored object with the
+     * given id, into DIR, or deletes it if that object is already stored.
+     * Returns void.
+     * @param tmp This is the temporary file.
+     * @param dir This is the directory loose objects of its type live in.
+     * @param id This is the id of the object it holds.
+     */
+    private void moveIntoStorage(File tmp, File dir, String id) {
+        if (hasObject(dir, id)) {
+            tmp.delete();
+            return;
+        }
+        replace(tmp, join(dir, id));
+    }
+
+    /**
+     * Returns true if an object with the given full id exists, either
+     * in a pack or as a loose file in DIR.
+     * @param dir is the directory loose objects of this type live in.
+     * @param id is the full id of the object.
+     */
+    private boolean hasObject(File dir, String id) {
+        for (Pack pack : packs()) {
+            if (pack.contains(id)) {
+                return true;
+            }
+        }
+        return join(dir, id).isFile();
+    }
+
+    /** Returns true if a blob with the given id exists, stored raw or
+     *  otherwise.
+     * @param blobID This is the full id of the blob. */
+    private boolean hasBlob(String blobID) {
+        return hasObject(blobDir, blobID) || join(rawDir, blobID).isFile();
+    }
+
+    /** Returns true if a commit with the given full id exists.
+     * @param commitID This is the full id of the commit. */
+    private boolean hasCommit(String commitID) {
+        return hasObject(commitDir, commitID);
+    }
+
+    /**
+     * Returns the full id of the only commit whose id starts with the
+     * given full or abbreviated id. Throws an error if there is no such
+     * commit, or more than one.
+     * @param commitID This is the full or abbreviated commit id.
+     */
+    private String resolveCommit(String commitID) {
+        List<String> matches = commitIDsWithPrefix(commitID.toLowerCase(), 2);
+        if (matches.isEmpty()) {
+            throw error("No commit with that id exists.");
+        } else if (matches.size() > 1) {
+            throw error("Commit id %s is ambiguous; use more characters.",
+                    commitID);
+        }
+        return matches.get(0);
+    }
+
+    /**
+     * Returns the ids of up to LIMIT commits whose ids start with PREFIX,
+     * in sorted order. Each pack's index is binary searched, and only the
+     * loose commits, which repack keeps few, are listed.
+     * @param prefix This is the start of a commit id.
+     * @param limit This is the most ids to return.
+     */
+    private List<String> commitIDsWithPrefix(String prefix, int limit) {
+        TreeSet<String> found = new TreeSet<>();
+        if (prefix.length() == UID_LENGTH) {
+            if (hasCommit(prefix)) {
+                found.add(prefix);
+            }
+        } else {
+            for (Pack pack : packs()) {
+                found.addAll(pack.idsWithPrefix(prefix, Pack.COMMIT, limit));
+            }
+            String[] loose = commitDir.list((dir, name) ->
+                    name.length() == UID_LENGTH && name.startsWith(prefix));
+            if (loose != null) {
+                found.addAll(Arrays.asList(loose));
+            }
+        }
+        List<String> result = new ArrayList<>(found);
+        return result.subList(0, Math.min(limit, result.size()));
+    }
+
+    /** Returns the ids of every commit, packed or loose, in sorted order. */
+    private List<String> commitIDs() {
+        TreeSet<String> ids = new TreeSet<>(plainFilenamesIn(commitDir));
+        for (Pack pack : packs()) {
+            ids.addAll(pack.ids(Pack.COMMIT));
+        }
+        return new ArrayList<>(ids);
+    }
+
+    /** Returns the commit-graph, loading it on first use. */
+    private CommitGraph commitGraph() {
+        if (graph == null) {
+            graph = new CommitGraph(graphFile);
+        }
+        return graph;
+    }
+
+    /**
+     * Adds a newly stored commit to the commit-graph. If the graph does
+     * not have the commit's parents (it is missing, or the repository
+     * predates it), the graph is removed instead, so that it is rebuilt
+     * in full the next time it is needed. Returns void.
+     * @param commitID This is the id of the new commit.
+     * @param commit This is the new commit.
+     */
+    private void recordInGraph(String commitID, Commit commit) {
+        CommitGraph g = commitGraph();
+        String parent = commit.getParentHash();
+        String secondParent = commit.getSecondParentHash();
+        if ((parent == null || g.contains(parent))
+                && (secondParent == null || g.contains(secondParent))) {
+            g.add(commitID, parent, secondParent,
+                    commit.getTimeStamp().getTime());
+        } else {
+            graphFile.delete();
+            graph = null;
+        }
+    }
+
+    /**
+     * Returns the id of the split point of the two given commits, their
+     * latest common ancestor, rebuilding the commit-graph first if it
+     * does not know both of them.
+     * @param first This is the id of one commit.
+     * @param second This is the id of the other commit.
+     */
+    private String mergeBase(String first, String second) {
+        if (!commitGraph().contains(first) || !commitGraph().contains(second)) {
+            rebuildCommitGraph();
+        }
+        return commitGraph().mergeBase(first, second);
+    }
+
+    /**
+     * Rewrites the commit-graph from every stored commit, ordered so
+     * that parents come before their children. Returns void.
+     */
+    private void rebuildCommitGraph() {
+        HashMap<String, Commit> commits = new HashMap<>();
+        for (String id : commitIDs()) {
+            commits.put(id, readCommit(id));
+        }
+        List<String> order = new ArrayList<>();
+        List<Commit> ordered = new ArrayList<>();
+        HashSet<String> done = new HashSet<>();
+        for (String id : commits.keySet()) {
+            ArrayDeque<String> stack = new ArrayDeque<>();
+            stack.push(id);
+            while (!stack.isEmpty()) {
+                String top = stack.peek();
+                if (done.contains(top)) {
+                    stack.pop();
+                    continue;
+                }
+                Commit c = commits.get(top);
+                String next = null;
+                for (String p : new String[] {c.getParentHash(),
+                        c.getSecondParentHash()}) {
+                    if (p != null && !done.contains(p)) {
+                        next = p;
+                    }
+                }
+                if (next != null) {
+                    stack.push(next);
+                } else {
+                    stack.pop();
+                    done.add(top);
+                    order.add(top);
+                    ordered.add(c);
+                }
+            }
+        }
+        CommitGraph.write(graphFile, order, ordered);
+        graph = null;
+    }
+
+    /**
+     * Returns the commit-meta file, rebuilding it first from every stored
+     * commit if it is missing or does not agree with its message heap.
+     * It is only rewritten while the repository lock is held alone;
+     * under a shared lock, it is rebuilt in memory instead.
+     */
+    private CommitMeta commitMeta() {
+        CommitMeta meta = new CommitMeta(metaFile, messagesFile);
+        if (!meta.exists()) {
+            List<String> ids = commitIDs();
+            List<Commit> commits = new ArrayList<>();
+            for (String id : ids) {
+                commits.add(readCommit(id));
+            }
+            if (!repoLock.heldExclusively()) {
+                return CommitMeta.inMemory(ids, commits);
+            }
+            MessageIndex.delete(messageIndexDir);
+            CommitMeta.write(metaFile, messagesFile, ids, commits);
+            meta = new CommitMeta(metaFile, messagesFile);
         }
-        if (oBlob != null) {
-            otherContent = oBlob.getContent();
+        return meta;
+    }
+
+    /**
+     * Adds a newly stored commit to the commit-meta file. If the file is
+     * missing and the commit is not the initial one, the repository
+     * predates it, or the file was cut short, and it is rebuilt in full
+     * instead, new commit included. Returns void.
+     * @param commitID This is the id of the new commit.
+     * @param commit This is the new commit.
+     */
+    private void recordInMeta(String commitID, Commit commit) {
+        if (metaFile.isFile() || commit.getParentHash() == null) {
+            CommitMeta.append(metaFile, messagesFile, commitID, commit);
+        }
+        messageIndex(commitMeta());
+    }
+
+    /**
+     * Returns the message-index of META. While the repository lock is
+     * held alone, it is first brought up to date, indexing the rows it
+     * does not cover in a new segment once there are MESSAGE_INDEX_LAG of
+     * them. Under a shared lock it is never written, and an index that
+     * does not fit META, or a META rebuilt in memory, gives an empty one.
+     * Rows it does not cover have to be searched directly.
+     * @param meta This is the commit-meta file.
+     */
+    private MessageIndex messageIndex(CommitMeta meta) {
+        if (meta.inMemory()) {
+            return new MessageIndex();
+        }
+        if (repoLock.heldExclusively()) {
+            MessageIndex.update(messageIndexDir, meta, MESSAGE_INDEX_LAG);
+        }
+        MessageIndex messages = new MessageIndex(messageIndexDir);
+        return messages.covered() > meta.size() ? new MessageIndex()
+                : messages;
+    }
+
+    /** Returns the file of the head branch. Only the name of the file
+     *  stored in headFile is used, so a repository can be moved. */
+    private File headBranch() {
+        return join(branchDir, readObject(headFile, File.class).getName());
+    }
+
+    /** Returns the rules of the .gitletignore file, compiling them on
+     *  first use. */
+    private Ignore ignore() {
+        if (ignore == null) {
+            ignore = new Ignore(ignoreFile);
+        }
+        return ignore;
+    }
+
+    /** Returns the index, loading it on first use. */
+    private Index index() {
+        if (index == null) {
+            index = new Index(indexFile);
+        }
+        return index;
+    }
+
+    /**
+     * Records in the index that the working file WORKING holds the blob
+     * BLOBID, so later commands can skip reading it while its stat data
+     * is unchanged. Does nothing if the file is staged. Returns void.
+     * @param fileName This is the name of the file.
+     * @param blobID This is the id of the blob the file holds.
+     * @param working This is the file in the CWD.
+     */
+    private void remember(String fileName, String blobID, File working) {
+        Index.Entry entry = index().get(fileName);
+        if (entry == null || entry.getState() == Index.TRACKED) {
+            index().put(fileName, blobID, Index.TRACKED, working);
         }
-        File inCWD = join(CWD, fileName);
-        writeContents(inCWD, headline, currContent, divider, otherContent, end);
-        Blob toStage = new Blob(inCWD);
-        File stageFile = join(STAGE_ADD, fileName);
-        writeObject(stageFile, toStage);
     }
 }
@@ -0,0 +1,84 @@
+package gitlet;
+
+import java.util.List;
+
+/**
+ * Status class. Represents what status reports about a repository: its
+ * branches, the files staged for addition and removal, the tracked files
+ * changed or deleted without being staged, and the untracked files.
+ * @author Nicole Ni and Ina Nierotka
+ */
+public class Status {
+
+    /** The name of the current branch. */
+    private final String currentBranch;
+    /** The names of the other branches. */
+    private final List<String> otherBranches;
+    /** Files staged for addition. */
+    private final List<String> staged;
+    /** Files staged for removal. */
+    private final List<String> removed;
+    /** Tracked files changed but not staged. */
+    private final List<String> modified;
+    /** Tracked files deleted but not staged for removal. */
+    private final List<String> deleted;
+    /** Files neither tracked nor staged. */
+    private final List<String> untracked;
+
+    /**
+     * Constructor of a status.
+     * @param currentBranch is the name of the current branch.
+     * @param otherBranches are the names of the other branches.
+     * @param staged are the files staged for addition.
+     * @param removed are the files staged for removal.
+     * @param modified are the tracked files changed but not staged.
+     * @param deleted are the tracked files deleted but not staged.
+     * @param untracked are the files neither tracked nor staged.
+     */
+    Status(String currentBranch, List<String> otherBranches,
+           List<String> staged, List<String> removed, List<String> modified,
+           List<String> deleted, List<String> untracked) {
+        this.currentBranch = currentBranch;
+        this.otherBranches = List.copyOf(otherBranches);
+        this.staged = List.copyOf(staged);
+        this.removed = List.copyOf(removed);
+        this.modified = List.copyOf(modified);
+        this.deleted = List.copyOf(deleted);
+        this.untracked = List.copyOf(untracked);
+    }
+
+    /** Getter method for the current branch, returns currentBranch. */
+    public String getCurrentBranch() {
+        return currentBranch;
+    }
+
+    /** Getter method for the other branches, returns otherBranches. */
+    public List<String> getOtherBranches() {
+        return otherBranches;
+    }
+
+    /** Getter method for the files staged for addition, returns staged. */
+    public List<String> getStaged() {
+        return staged;
+    }
+
+    /** Getter method for the files staged for removal, returns removed. */
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    /** Getter method for the changed files, returns modified. */
+    public List<String> getModified() {
+        return modified;
+    }
+
+    /** Getter method for the deleted files, returns deleted. */
+    public List<String> getDeleted() {
+        return deleted;
+    }
+
+    /** Getter method for the untracked files, returns untracked. */
+    public List<String> getUntracked() {
+        return untracked;
+    }
+}
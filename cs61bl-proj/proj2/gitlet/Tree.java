@@ -0,0 +1,104 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tree class. Represents one directory of a commit. Maps the name of each
+ * file in the directory to the id of its blob, and the name of each
+ * subdirectory to the id of its own tree. Trees are stored under the sha1
+ * code of the bytes written by encode, so a directory that did not change
+ * between two commits is the very same tree object: a new commit only
+ * writes trees for the directories its changes are in, and comparing two
+ * commits can skip a whole directory by comparing a single id.
+ * @author Nicole Ni and Ina Nierotka
+ */
+public class Tree {
+    /** Version number written at the start of an encoded tree. */
+    private static final int VERSION = 1;
+
+    /** Blob id of each file in this directory, by name. */
+    private TreeMap<String, String> files = new TreeMap<>();
+    /** Tree id of each subdirectory of this directory, by name. */
+    private TreeMap<String, String> dirs = new TreeMap<>();
+
+    /** Getter method for the files, returns files. */
+    public TreeMap<String, String> getFiles() {
+        return files;
+    }
+
+    /** Getter method for the subdirectories, returns dirs. */
+    public TreeMap<String, String> getDirs() {
+        return dirs;
+    }
+
+    /** Returns true if this directory holds no files at any depth. */
+    public boolean isEmpty() {
+        return files.isEmpty() && dirs.isEmpty();
+    }
+
+    /**
+     * Returns the bytes this tree is stored as, whose sha1 code is its
+     * id: a version byte, then the number of files followed by the name
+     * and raw blob id of each, then the same for the subdirectories and
+     * their tree ids, all in sorted order.
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            writeEntries(out, files);
+            writeEntries(out, dirs);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the tree encoded in BYTES by encode.
+     * @param bytes This is the encoded tree.
+     */
+    public static Tree decode(byte[] bytes) {
+        Tree tree = new Tree();
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(bytes))) {
+            if (in.readByte() != VERSION) {
+                throw Utils.error("Unknown tree version.");
+            }
+            readEntries(in, tree.files);
+            readEntries(in, tree.dirs);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        return tree;
+    }
+
+    /** Writes the number of ENTRIES to OUT, then the name and raw id of
+     *  each. */
+    private static void writeEntries(DataOutputStream out,
+                                     TreeMap<String, String> entries)
+            throws IOException {
+        out.writeInt(entries.size());
+        for (Map.Entry<String, String> e : entries.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.write(Pack.toBytes(e.getValue()));
+        }
+    }
+
+    /** Reads entries written by writeEntries from IN into ENTRIES. */
+    private static void readEntries(DataInputStream in,
+                                    TreeMap<String, String> entries)
+            throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i += 1) {
+            String name = in.readUTF();
+            entries.put(name, Commit.readID(in));
+        }
+    }
+}
@@ -1,22 +1,29 @@
 package gitlet;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Formatter;
 import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 
 /** Assorted utilities.
@@ -47,16 +54,30 @@ class Utils {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
+            return toHex(md.digest());
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
+    /** Returns a new SHA-1 message digest. */
+    static MessageDigest sha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Returns DIGEST as a hexadecimal numeral. */
+    static String toHex(byte[] digest) {
+        Formatter result = new Formatter();
+        for (byte b : digest) {
+            result.format("%02x", b);
+        }
+        return result.toString();
+    }
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -136,18 +157,41 @@ class Utils {
         }
     }
 
+    /** Return a new, empty file in the directory of FILE, to be written and
+     *  then renamed onto FILE with replace.  Throws IllegalArgumentException
+     *  in case of problems. */
+    static File tempFileFor(File file) {
+        try {
+            return File.createTempFile(file.getName() + "-", ".tmp",
+                                       file.getParentFile());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Rename TMP onto FILE in one step, replacing FILE if it exists, so that
+     *  a reader of FILE sees either its old or its new contents, never part
+     *  of either.  Throws IllegalArgumentException in case of problems. */
+    static void replace(File tmp, File file) {
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
+     *  FILE must have been written by writeObject.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
         try {
-            ObjectInputStream in =
-                new ObjectInputStream(new FileInputStream(file));
-            T result = expectedClass.cast(in.readObject());
-            in.close();
-            return result;
-        } catch (IOException | ClassCastException
-                 | ClassNotFoundException excp) {
+            return readObject(new BufferedInputStream(
+                new FileInputStream(file)), expectedClass);
+        } catch (IOException excp) {
             throw new IllegalArgumentException(excp);
         }
     }
@@ -157,6 +201,30 @@ class Utils {
         writeContents(file, serialize(obj));
     }
 
+    /** Write BYTES to FILE through a deflate stream.  Read back with
+     *  inflate.  Throws IllegalArgumentException in case of problems. */
+    static void writeCompressed(File file, byte[] bytes) {
+        try (OutputStream out = new DeflaterOutputStream(
+                 new BufferedOutputStream(
+                     Files.newOutputStream(file.toPath())))) {
+            out.write(bytes);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Return the bytes that writeCompressed was given, from the STORED
+     *  bytes of the file it wrote.  Throws IllegalArgumentException in
+     *  case of problems. */
+    static byte[] inflate(byte[] stored) {
+        try (InputStream in = new InflaterInputStream(
+                 new ByteArrayInputStream(stored))) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
     /* DIRECTORIES */
 
     /** Filter out all but plain files. */
@@ -220,7 +288,26 @@ class Utils {
         }
     }
 
+    /** Return an object of type T deserialized from BYTES, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        return readObject(new ByteArrayInputStream(bytes), expectedClass);
+    }
 
+    /** Return an object of type T read from IN, casting it to
+     *  EXPECTEDCLASS and closing IN.  Throws IllegalArgumentException in
+     *  case of problems. */
+    private static <T extends Serializable> T readObject(
+            InputStream in, Class<T> expectedClass) {
+        try (ObjectInputStream objectIn = new ObjectInputStream(in)) {
+            return expectedClass.cast(objectIn.readObject());
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
 
     /* MESSAGES AND ERROR REPORTING */
 
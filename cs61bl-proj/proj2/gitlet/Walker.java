@@ -0,0 +1,120 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Walker class. Lists the files in a directory and all of its
+ * subdirectories, as paths with / between names, sorted. Each directory is
+ * read by a task of the common ForkJoinPool, shared by every walk, that
+ * forks a task for each of its subdirectories, so the directories of a
+ * large tree are read on many threads at once, the calling thread among
+ * them. A Filter decides which directories are entered and
+ * which files are listed, so that a whole subtree can be skipped without
+ * being read. The .gitlet directory of the working directory and symbolic
+ * links are never listed.
+ * @author Nicole Ni and Ina Nierotka
+ */
+class Walker {
+
+    /** Decides which paths a Walker visits. */
+    interface Filter {
+        /**
+         * Returns true if the file or directory at PATH is visited: a file
+         * is listed, and a directory is entered.
+         * @param path is the path, relative to the working directory.
+         * @param directory is true if PATH is a directory.
+         */
+        boolean accept(String path, boolean directory);
+    }
+
+    /** The filter of the paths visited. */
+    private final Filter filter;
+
+    /**
+     * Constructor of a walker.
+     * @param filter decides which paths are visited.
+     */
+    Walker(Filter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Returns the paths of the files under DIR that the filter accepts,
+     * sorted, each starting with PREFIX. Returns an empty list if DIR is
+     * not a directory.
+     * @param dir is the directory to walk.
+     * @param prefix is the path of DIR relative to the working directory,
+     *               ending in a slash, or the empty string if DIR is the
+     *               working directory.
+     */
+    List<String> walk(File dir, String prefix) {
+        if (!dir.isDirectory()) {
+            return new ArrayList<>();
+        }
+        List<String> result = ForkJoinPool.commonPool().invoke(
+                new DirectoryTask(dir.toPath(), prefix));
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Lists the files under one directory, forking a task for each of
+     *  its subdirectories. */
+    private class DirectoryTask extends RecursiveTask<List<String>> {
+        /** Version of the serialized form, which is never used. */
+        private static final long serialVersionUID = 1L;
+        /** The directory. */
+        private final Path dir;
+        /** Its path relative to the working directory, ending in a slash,
+         *  or the empty string. */
+        private final String prefix;
+
+        /** Creates a task listing DIRECTORY, whose relative path is PATH. */
+        DirectoryTask(Path directory, String path) {
+            dir = directory;
+            prefix = path;
+        }
+
+        @Override
+        protected List<String> compute() {
+            List<String> files = new ArrayList<>();
+            List<DirectoryTask> subdirs = new ArrayList<>();
+            try (DirectoryStream<Path> entries =
+                         Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    String path = prefix + name;
+                    BasicFileAttributes attrs = Files.readAttributes(entry,
+                            BasicFileAttributes.class,
+                            LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.isDirectory()) {
+                        if (!path.equals(".gitlet")
+                                && filter.accept(path, true)) {
+                            subdirs.add(new DirectoryTask(entry, path + "/"));
+                        }
+                    } else if (attrs.isRegularFile()
+                            && filter.accept(path, false)) {
+                        files.add(path);
+                    }
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+            invokeAll(subdirs);
+            for (DirectoryTask task : subdirs) {
+                files.addAll(task.join());
+            }
+            return files;
+        }
+    }
+}